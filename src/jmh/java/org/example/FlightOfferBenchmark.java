@@ -0,0 +1,63 @@
+package org.example;
+
+import com.amadeus.resources.FlightOfferSearch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flight offer simplification as done after the Amadeus call: all offers with airline names
+ * for /search/flights, the three distinct top flights for /trip-info, and the JSON that
+ * /search/flights writes. Input is a recorded 40 offer response for ARN-NCE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlightOfferBenchmark {
+    private FlightOfferSearch[] offers;
+    private AirlineDirectory airlineDirectory;
+    private ObjectMapper mapper;
+
+    @Setup
+    public void setup() {
+        String json = Fixtures.read("flight-offers.json");
+        // the SDK maps the data array with Gson the same way
+        offers = new Gson().fromJson(JsonParser.parseString(json).getAsJsonObject().get("data"),
+                FlightOfferSearch[].class);
+        // every carrier in the fixture is in the bundled list, so no lookup is ever made
+        airlineDirectory = new AirlineDirectory(codes -> Map.of(), DiskCache.disabled());
+        mapper = new ObjectMapper();
+    }
+
+    @Benchmark
+    public List<FlightSummary> searchFlights() {
+        return airlineDirectory.enrich(FlightSummary.fromOffers(offers));
+    }
+
+    @Benchmark
+    public List<FlightSummary> tripInfoTopFlights() {
+        return airlineDirectory.enrich(FlightSummary.distinct(FlightSummary.fromOffers(offers), 3));
+    }
+
+    @Benchmark
+    public byte[] searchFlightsJson() throws Exception {
+        return mapper.writeValueAsBytes(airlineDirectory.enrich(FlightSummary.fromOffers(offers)));
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.GoogleMaps;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MashupJavalin.encodePolyline for the airport to airport line of /mashupJavalin/flightsAndPolyline
+ * and for a route long enough to show the per point cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolylineBenchmark {
+    private double[][] airports;
+    private double[][] route;
+
+    @Setup
+    public void setup() {
+        // ARN -> NCE
+        airports = new double[][]{{59.6519, 17.9186}, {43.6584, 7.2159}};
+        route = new double[500][];
+        for (int i = 0; i < route.length; i++) {
+            double f = i / (double) (route.length - 1);
+            route[i] = new double[]{
+                    airports[0][0] + (airports[1][0] - airports[0][0]) * f + Math.sin(i * 0.37) * 0.01,
+                    airports[0][1] + (airports[1][1] - airports[0][1]) * f + Math.cos(i * 0.29) * 0.01
+            };
+        }
+    }
+
+    @Benchmark
+    public String airportToAirport() {
+        return MashupJavalin.encodePolyline(airports);
+    }
+
+    @Benchmark
+    public String longRoute() {
+        return MashupJavalin.encodePolyline(route);
+    }
+}
@@ -0,0 +1,76 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hotel offers parsing and maps links in HotelSearchService and the payloads built from the summaries for
+ * /search/nearby and /trip-info. Input is a recorded 20 hotel response for Nice.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotelBenchmark {
+    // MAX_HOTEL_RESULTS default, more than the fixture has so the whole body is read
+    private static final int MAX_HOTEL_RESULTS = 25;
+
+    private byte[] body;
+    private JsonFactory json;
+    private List<HotelSearchService.HotelSummary> summaries;
+    private HotelSearchService.HotelQuery query;
+
+    @Setup
+    public void setup() throws Exception {
+        body = Fixtures.read("hotel-offers.json").getBytes(StandardCharsets.UTF_8);
+        json = new ObjectMapper().getFactory();
+        summaries = parseHotels();
+        query = new HotelSearchService.HotelQuery(43.6950, 7.2650, "2026-12-01", "2026-12-05", 2, 1, 15);
+    }
+
+    @Benchmark
+    public List<HotelSearchService.HotelSummary> parseHotels() throws Exception {
+        return HotelSearchService.parseHotels(json, new ByteArrayInputStream(body), MAX_HOTEL_RESULTS);
+    }
+
+    @Benchmark
+    public String googleMapsLink() {
+        return HotelSearchService.googleMapsLink(43.69029, 7.25331, "HOTEL NEGRESCO");
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> normalizeHotelSummaries() {
+        return TripInfoService.normalizeHotelSummaries(summaries);
+    }
+
+    @Benchmark
+    public void toHotelPayload(Blackhole blackhole) {
+        for (HotelSearchService.HotelSummary summary : summaries) {
+            blackhole.consume(TripInfoService.toHotelPayload(summary));
+        }
+    }
+
+    @Benchmark
+    public String cacheKey() {
+        return query.cacheKey();
+    }
+}
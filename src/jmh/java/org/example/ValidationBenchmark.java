@@ -0,0 +1,69 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ValidationUtils checks of a /trip-info request, for valid parameters and for
+ * malformed ones, which go through the parse exceptions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+    private String lat;
+    private String lng;
+    private String checkIn;
+    private String checkOut;
+    private String adults;
+    private String rooms;
+    private String badLat;
+    private String badDate;
+    private String badNumber;
+
+    @Setup
+    public void setup() {
+        lat = "43.6950";
+        lng = "7.2650";
+        // relative to today so the dates stay in the future
+        checkIn = LocalDate.now().plusDays(30).toString();
+        checkOut = LocalDate.now().plusDays(34).toString();
+        adults = "2";
+        rooms = "1";
+        badLat = "43,6950";
+        badDate = "2026-13-45";
+        badNumber = "two";
+    }
+
+    @Benchmark
+    public boolean validTripInfoQuery() {
+        return ValidationUtils.isValidCoordinates(lat, lng)
+                && ValidationUtils.isFutureDate(checkIn)
+                && ValidationUtils.isPositiveInteger(adults)
+                && ValidationUtils.isPositiveInteger(rooms)
+                && ValidationUtils.isValidDateRange(checkIn, checkOut);
+    }
+
+    @Benchmark
+    public boolean invalidTripInfoQuery() {
+        // | instead of || so every check pays for its failure path
+        return ValidationUtils.isValidCoordinates(badLat, lng)
+                | ValidationUtils.isFutureDate(badDate)
+                | ValidationUtils.isPositiveInteger(badNumber)
+                | ValidationUtils.isValidDateRange(checkIn, badDate);
+    }
+}
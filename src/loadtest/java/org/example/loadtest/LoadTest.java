@@ -0,0 +1,336 @@
+package org.example.loadtest;
+
+import org.example.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Open-loop load test: starts the stub upstreams, starts TripCompass against them (unless
+ * target points at a running instance) and sends the configured mix of requests at a fixed
+ * rate, whether or not earlier ones have answered. Latency is measured from the moment a
+ * request was due, so a backed-up server shows in the numbers instead of slowing the test
+ * down. Settings are in loadtest.properties.
+ */
+public final class LoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final Settings settings;
+    // HTTP/1.1 like a browser talking to Javalin; the HTTP/2 upgrade attempt would only add noise
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    private LoadTest(Settings settings) {
+        this.settings = settings;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.load(args);
+        int stubPort = settings.getInt("stub.port", 7100);
+        StubUpstreams stubs = StubUpstreams.start(settings, stubPort);
+        Process app = null;
+        try {
+            LoadTest loadTest = new LoadTest(settings);
+            String target = settings.get("target", "");
+            if (target.isBlank()) {
+                target = "http://localhost:7000";
+                if (loadTest.answers(target)) {
+                    throw new IllegalStateException("Something already listens on " + target
+                            + ", stop it or point target at it");
+                }
+                app = startApp(settings, stubPort);
+            }
+            loadTest.awaitReady(target, app);
+            loadTest.run(target);
+        } finally {
+            if (app != null) {
+                app.destroy();
+                app.waitFor();
+            }
+            stubs.stop();
+        }
+    }
+
+    // TripCompass in a child JVM, in a scratch directory so it reads no real .env or disk cache
+    private static Process startApp(Settings settings, int stubPort) throws IOException {
+        Path workDir = Files.createTempDirectory("tripcompass-loadtest");
+        Files.createFile(workDir.resolve(".env"));
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>(List.of(java));
+        command.addAll(List.of(settings.get("app.jvm-args", "").split("\\s+")));
+        command.removeIf(String::isBlank);
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), "org.example.TripController"));
+
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(workDir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(workDir.resolve("app.log").toFile());
+        Map<String, String> env = builder.environment();
+        env.put("AMADEUS_API_KEY", "stub");
+        env.put("AMADEUS_API_SECRET", "stub");
+        env.put("GOOGLE_MAPS_API_KEY", "stub");
+        env.put("AMADEUS_BASE_URL", "http://localhost:" + stubPort);
+        env.put("GOOGLE_MAPS_BASE_URL", "http://localhost:" + stubPort + "/maps/api/");
+        env.put("DISK_CACHE_DIR", "");
+        env.putAll(settings.withPrefix("app.env."));
+        logger.info("Starting TripCompass in {}, log in app.log", workDir);
+        return builder.start();
+    }
+
+    private void run(String target) throws InterruptedException {
+        double rate = settings.getDouble("rate", 20);
+        Duration warmup = Duration.ofSeconds(settings.getInt("warmup-seconds", 10));
+        Duration duration = Duration.ofSeconds(settings.getInt("duration-seconds", 60));
+        Duration timeout = Duration.ofMillis(settings.getInt("timeout-ms", 10_000));
+        Semaphore inFlight = new Semaphore(settings.getInt("max-in-flight", 512));
+        List<Scenario> scenarios = scenarios();
+        int totalWeight = scenarios.stream().mapToInt(Scenario::weight).sum();
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("Every mix.* weight is 0");
+        }
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        scenarios.forEach(s -> stats.put(s.name(), new Stats()));
+        Stats all = new Stats();
+        AtomicBoolean firstFailure = new AtomicBoolean();
+        Random random = new Random(settings.getInt("seed", 42));
+        prime(target, scenarios, random, timeout);
+
+        logger.info("Sending {} req/s to {} for {}s after {}s of warmup", rate, target,
+                duration.toSeconds(), warmup.toSeconds());
+        long interval = Math.round(1e9 / rate);
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+
+        for (long due = start; due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Scenario scenario = pick(scenarios, totalWeight, random);
+            boolean measured = due >= measureFrom;
+            Stats scenarioStats = stats.get(scenario.name());
+            if (!inFlight.tryAcquire()) {
+                if (measured) {
+                    scenarioStats.dropped.increment();
+                    all.dropped.increment();
+                }
+                continue;
+            }
+            long sentFor = due;
+            HttpRequest request = HttpRequest.newBuilder(URI.create(target + scenario.path().apply(random)))
+                    .timeout(timeout)
+                    .GET()
+                    .build();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                inFlight.release();
+                if (error != null && firstFailure.compareAndSet(false, true)) {
+                    logger.warn("First failed request, {}: {}", scenario.name(), error.toString());
+                }
+                if (measured) {
+                    long nanos = System.nanoTime() - sentFor;
+                    int status = error != null ? 0 : response.statusCode();
+                    scenarioStats.record(nanos, status);
+                    all.record(nanos, status);
+                }
+            });
+        }
+
+        // whatever is still out gets the request timeout to come back
+        long deadline = System.nanoTime() + timeout.toNanos();
+        int permits = settings.getInt("max-in-flight", 512);
+        while (inFlight.availablePermits() < permits && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        report(stats, all, duration);
+    }
+
+    /*
+     * One request per scenario, one at a time, before the load starts. A cold JVM hit by many
+     * requests at once has them all wait on the same class initialisations, which on a small
+     * machine can stall the virtual-thread carriers for seconds and skew the warmup.
+     */
+    private void prime(String target, List<Scenario> scenarios, Random random, Duration timeout)
+            throws InterruptedException {
+        for (Scenario scenario : scenarios) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(target + scenario.path().apply(random)))
+                    .timeout(timeout)
+                    .build();
+            try {
+                client.send(request, HttpResponse.BodyHandlers.discarding());
+            } catch (IOException e) {
+                logger.warn("Priming {} failed: {}", scenario.name(), e.toString());
+            }
+        }
+    }
+
+    // Polls /hello until it answers; app is the child process, null for an external target
+    private void awaitReady(String target, Process app) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(settings.getInt("startup-seconds", 60)).toNanos();
+        while (System.nanoTime() < deadline) {
+            if (answers(target)) {
+                return;
+            }
+            if (app != null && !app.isAlive()) {
+                throw new IllegalStateException("TripCompass exited with " + app.exitValue() + ", see app.log");
+            }
+            Thread.sleep(250);
+        }
+        throw new IllegalStateException(target + " did not answer /hello in time");
+    }
+
+    private boolean answers(String target) throws InterruptedException {
+        HttpRequest hello = HttpRequest.newBuilder(URI.create(target + "/hello")).timeout(Duration.ofSeconds(2)).build();
+        try {
+            return client.send(hello, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            // not listening (yet)
+            return false;
+        }
+    }
+
+    record Scenario(String name, int weight, Function<Random, String> path) {
+    }
+
+    // The request mix, weighted by mix.<name>; destinations and dates vary so caches see realistic keys
+    private List<Scenario> scenarios() {
+        List<Scenario> scenarios = new ArrayList<>();
+        add(scenarios, "trip-info", 30, r -> {
+            Places.Place to = place(r);
+            Places.Place from = place(r);
+            LocalDate checkIn = checkIn(r);
+            return "/trip-info?lat=" + to.lat() + "&lng=" + to.lng() + "&origin=" + from.airportCode()
+                    + "&checkInDate=" + checkIn + "&checkOutDate=" + checkIn.plusDays(1 + r.nextInt(6))
+                    + "&adults=" + (1 + r.nextInt(2)) + "&roomQuantity=1";
+        });
+        add(scenarios, "search-flights", 20, r -> "/search/flights?origin=" + place(r).airportCode()
+                + "&destination=" + place(r).airportCode() + "&departureDate=" + checkIn(r) + "&adults=" + (1 + r.nextInt(3)));
+        add(scenarios, "search-nearby", 15, r -> {
+            Places.Place place = place(r);
+            LocalDate checkIn = checkIn(r);
+            return "/search/nearby?lat=" + place.lat() + "&lng=" + place.lng() + "&checkInDate=" + checkIn
+                    + "&checkOutDate=" + checkIn.plusDays(2) + "&adults=2&roomQuantity=1&radiusKm=10";
+        });
+        add(scenarios, "search-locations", 15, r -> {
+            String city = place(r).city();
+            return "/search/locations?keyword=" + encode(city.substring(0, Math.min(city.length(), 3 + r.nextInt(3))));
+        });
+        add(scenarios, "flights-and-polyline", 5, r -> "/mashupJavalin/flightsAndPolyline?startPlace="
+                + encode(place(r).city()) + "&endPlace=" + encode(place(r).city()));
+        add(scenarios, "hotels-and-sights", 5, r -> "/mashupJavalin/hotelsAndSights?city=" + encode(place(r).city())
+                + "&placeType=" + List.of("restaurant", "museum", "tourist_attraction").get(r.nextInt(3))
+                + "&checkInDate=" + checkIn(r));
+        add(scenarios, "dist-to-hotel", 4, r -> {
+            Places.Place place = place(r);
+            return "/mashupJavalin/distToHotel?airport=" + place.airportCode()
+                    + "&hotel=" + encode("Hotel " + (1 + r.nextInt(20)) + " " + place.city());
+        });
+        add(scenarios, "dist-to-airport", 3, r -> "/mashupJavalin/distToAirport?city=" + encode(place(r).city()));
+        add(scenarios, "nearby-airports", 3, r -> {
+            Places.Place place = place(r);
+            return "/mashupJavalin/nearbyAirports?lat=" + place.lat() + "&lng=" + place.lng() + "&radiusKm=150&limit=5";
+        });
+        scenarios.removeIf(s -> s.weight() <= 0);
+        return scenarios;
+    }
+
+    private void add(List<Scenario> scenarios, String name, int defaultWeight, Function<Random, String> path) {
+        scenarios.add(new Scenario(name, settings.getInt("mix." + name, defaultWeight), path));
+    }
+
+    private static Scenario pick(List<Scenario> scenarios, int totalWeight, Random random) {
+        int roll = random.nextInt(totalWeight);
+        for (Scenario scenario : scenarios) {
+            roll -= scenario.weight();
+            if (roll < 0) {
+                return scenario;
+            }
+        }
+        return scenarios.get(scenarios.size() - 1);
+    }
+
+    private static Places.Place place(Random random) {
+        return Places.ALL.get(random.nextInt(Places.ALL.size()));
+    }
+
+    private static LocalDate checkIn(Random random) {
+        return LocalDate.now().plusDays(14 + random.nextInt(60));
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static final class Stats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder clientErrors = new LongAdder();
+        private final LongAdder serverErrors = new LongAdder();
+        // no response at all: connection refused, reset or timed out
+        private final LongAdder failed = new LongAdder();
+        // due while max-in-flight requests were outstanding, never sent
+        private final LongAdder dropped = new LongAdder();
+
+        // status 0 means no response
+        void record(long nanos, int status) {
+            latency.record(nanos);
+            if (status == 0) {
+                failed.increment();
+            } else if (status >= 500) {
+                serverErrors.increment();
+            } else if (status >= 400) {
+                clientErrors.increment();
+            } else {
+                ok.increment();
+            }
+        }
+    }
+
+    private static void report(Map<String, Stats> stats, Stats all, Duration duration) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%n%-22s %8s %8s %6s %6s %7s %8s %9s %9s %9s %9s%n",
+                "scenario", "requests", "ok", "4xx", "5xx", "failed", "dropped", "req/s", "p50 ms", "p99 ms", "p999 ms"));
+        stats.forEach((name, s) -> row(out, name, s, duration));
+        row(out, "all", all, duration);
+        System.out.println(out);
+    }
+
+    private static void row(StringBuilder out, String name, Stats s, Duration duration) {
+        double[] q = s.latency.quantileSeconds(QUANTILES);
+        out.append(String.format(Locale.ROOT, "%-22s %8d %8d %6d %6d %7d %8d %9.1f %9s %9s %9s%n",
+                name, s.latency.count(), s.ok.sum(), s.clientErrors.sum(), s.serverErrors.sum(), s.failed.sum(),
+                s.dropped.sum(), s.latency.count() / (double) duration.toSeconds(),
+                millis(q[0]), millis(q[1]), millis(q[2])));
+    }
+
+    private static String millis(double seconds) {
+        return Double.isNaN(seconds) ? "-" : String.format(Locale.ROOT, "%.1f", seconds * 1000);
+    }
+}
@@ -0,0 +1,56 @@
+package org.example.loadtest;
+
+import java.util.List;
+import java.util.Locale;
+
+// The destinations the stubs know and the load test asks for
+final class Places {
+
+    record Place(String city, String cityCode, String airportCode, String airportName, String countryCode,
+                 double lat, double lng, double airportLat, double airportLng) {
+    }
+
+    static final List<Place> ALL = List.of(
+            new Place("Stockholm", "STO", "ARN", "Arlanda", "SE", 59.3293, 18.0686, 59.6519, 17.9186),
+            new Place("Nice", "NCE", "NCE", "Cote d'Azur", "FR", 43.7102, 7.2620, 43.6584, 7.2159),
+            new Place("Paris", "PAR", "CDG", "Charles de Gaulle", "FR", 48.8566, 2.3522, 49.0097, 2.5479),
+            new Place("London", "LON", "LHR", "Heathrow", "GB", 51.5074, -0.1278, 51.4700, -0.4543),
+            new Place("Rome", "ROM", "FCO", "Fiumicino", "IT", 41.9028, 12.4964, 41.8003, 12.2389),
+            new Place("Barcelona", "BCN", "BCN", "El Prat", "ES", 41.3874, 2.1686, 41.2974, 2.0833),
+            new Place("Berlin", "BER", "BER", "Brandenburg", "DE", 52.5200, 13.4050, 52.3667, 13.5033),
+            new Place("Amsterdam", "AMS", "AMS", "Schiphol", "NL", 52.3676, 4.9041, 52.3105, 4.7683),
+            new Place("Lisbon", "LIS", "LIS", "Humberto Delgado", "PT", 38.7223, -9.1393, 38.7742, -9.1342),
+            new Place("Copenhagen", "CPH", "CPH", "Kastrup", "DK", 55.6761, 12.5683, 55.6180, 12.6508),
+            new Place("Vienna", "VIE", "VIE", "Schwechat", "AT", 48.2082, 16.3738, 48.1103, 16.5697),
+            new Place("Madrid", "MAD", "MAD", "Barajas", "ES", 40.4168, -3.7038, 40.4983, -3.5676),
+            new Place("Athens", "ATH", "ATH", "Eleftherios Venizelos", "GR", 37.9838, 23.7275, 37.9364, 23.9445),
+            new Place("Prague", "PRG", "PRG", "Vaclav Havel", "CZ", 50.0755, 14.4378, 50.1008, 14.2600)
+    );
+
+    private Places() {
+    }
+
+    // Place with the city or airport name or code, or null
+    static Place find(String text) {
+        if (text == null) {
+            return null;
+        }
+        String query = text.trim().toLowerCase(Locale.ROOT);
+        for (Place place : ALL) {
+            if (query.equalsIgnoreCase(place.cityCode()) || query.equalsIgnoreCase(place.airportCode())
+                    || query.contains(place.city().toLowerCase(Locale.ROOT))
+                    || query.contains(place.airportName().toLowerCase(Locale.ROOT))) {
+                return place;
+            }
+        }
+        return null;
+    }
+
+    static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 6371.0088 * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Load test settings: loadtest.properties from the classpath, overridden by system
+ * properties (-Dkey=value) and then by --key=value arguments.
+ */
+final class Settings {
+    private final Properties properties;
+
+    private Settings(Properties properties) {
+        this.properties = properties;
+    }
+
+    static Settings load(String[] args) {
+        Properties properties = new Properties();
+        try (InputStream in = Settings.class.getResourceAsStream("/loadtest.properties")) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        properties.putAll(System.getProperties());
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int split = arg.indexOf('=');
+                properties.setProperty(arg.substring(2, split), arg.substring(split + 1));
+            }
+        }
+        return new Settings(properties);
+    }
+
+    String get(String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    int getInt(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    double getDouble(String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        return value != null ? Double.parseDouble(value.trim()) : defaultValue;
+    }
+
+    boolean getBoolean(String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+
+    // Every key starting with prefix, without the prefix, sorted
+    Map<String, String> withPrefix(String prefix) {
+        Map<String, String> result = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                result.put(key.substring(prefix.length()), properties.getProperty(key).trim());
+            }
+        }
+        return result;
+    }
+}
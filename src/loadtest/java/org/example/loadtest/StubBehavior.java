@@ -0,0 +1,47 @@
+package org.example.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How one stubbed upstream endpoint behaves: a log-normal latency given by its median and
+ * p99, and the share of calls answered with a server error or with 429. Read from
+ * stub.<name>.median-ms, p99-ms, error-rate and rate-limit-rate, falling back to stub.default.*.
+ */
+record StubBehavior(double medianMillis, double p99Millis, double errorRate, double rateLimitRate) {
+    // standard normal quantile of 0.99
+    private static final double Z_99 = 2.3263;
+
+    enum Outcome {
+        OK,
+        ERROR,
+        RATE_LIMITED
+    }
+
+    static StubBehavior of(Settings settings, String name) {
+        return new StubBehavior(
+                value(settings, name, "median-ms", 100),
+                value(settings, name, "p99-ms", 400),
+                value(settings, name, "error-rate", 0),
+                value(settings, name, "rate-limit-rate", 0));
+    }
+
+    private static double value(Settings settings, String name, String key, double defaultValue) {
+        return settings.getDouble("stub." + name + "." + key, settings.getDouble("stub.default." + key, defaultValue));
+    }
+
+    long sampleDelayMillis() {
+        if (p99Millis <= medianMillis) {
+            return Math.round(medianMillis);
+        }
+        double sigma = Math.log(p99Millis / medianMillis) / Z_99;
+        return Math.round(medianMillis * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    Outcome sampleOutcome() {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < rateLimitRate) {
+            return Outcome.RATE_LIMITED;
+        }
+        return roll < rateLimitRate + errorRate ? Outcome.ERROR : Outcome.OK;
+    }
+}
@@ -0,0 +1,440 @@
+package org.example.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Local stand-ins for the Amadeus and Google Maps endpoints TripCompass calls, on one port:
+ * Amadeus paths at the root (point AMADEUS_BASE_URL here) and Google under /maps/api/
+ * (GOOGLE_MAPS_BASE_URL). Answers are generated from the query, the same query always gets
+ * the same answer, and every endpoint has its own StubBehavior for latency, errors and 429s.
+ * Waiting is a delayed future, so slow stubs do not hold server threads.
+ */
+public final class StubUpstreams {
+    private static final Logger logger = LoggerFactory.getLogger(StubUpstreams.class);
+    private static final String AMADEUS_JSON = "application/vnd.amadeus+json";
+    private static final String POLYLINE = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+    private static final String[][] CARRIERS = {
+            {"SK", "SAS", "SCANDINAVIAN AIRLINES"}, {"AF", "AFR", "AIR FRANCE"}, {"KL", "KLM", "KLM ROYAL DUTCH AIRLINES"},
+            {"LH", "DLH", "LUFTHANSA"}, {"DY", "NOZ", "NORWEGIAN AIR SHUTTLE"}, {"BA", "BAW", "BRITISH AIRWAYS"},
+            {"LX", "SWR", "SWISS INTERNATIONAL AIR LINES"}, {"IB", "IBE", "IBERIA"}, {"AZ", "ITY", "ITA AIRWAYS"}
+    };
+    private static final String[] HUBS = {"CPH", "AMS", "FRA", "CDG", "LHR", "ZRH", "MUC"};
+
+    private final Settings settings;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AtomicLong tokens = new AtomicLong();
+    private final Javalin app;
+
+    private StubUpstreams(Settings settings, int port) {
+        this.settings = settings;
+        this.app = Javalin.create(config -> config.showJavalinBanner = false);
+
+        app.post("/v1/security/oauth2/token", amadeus("amadeus.token", this::token));
+        app.get("/v2/shopping/flight-offers", amadeus("amadeus.flights", this::flightOffers));
+        app.get("/v1/reference-data/locations", amadeus("amadeus.locations", this::locations));
+        app.get("/v1/reference-data/locations/airports", amadeus("amadeus.airports", this::airports));
+        app.get("/v1/reference-data/locations/hotels/by-geocode", amadeus("amadeus.hotels", this::hotelsByGeocode));
+        app.get("/v3/shopping/hotel-offers", amadeus("amadeus.hotel-offers", this::hotelOffers));
+        app.get("/v2/shopping/hotel-offers", amadeus("amadeus.hotel-search", this::hotelSearch));
+        app.get("/v1/reference-data/airlines", amadeus("amadeus.airlines", this::airlines));
+
+        app.get("/maps/api/directions/json", google("google.directions", this::directions));
+        app.get("/maps/api/geocode/json", google("google.geocode", this::geocode));
+        app.get("/maps/api/place/nearbysearch/json", google("google.places", this::nearbyPlaces));
+        app.get("/maps/api/place/findplacefromtext/json", google("google.places", this::findPlace));
+
+        app.start(port);
+        logger.info("Stub upstreams listening on port {}", port);
+    }
+
+    static StubUpstreams start(Settings settings, int port) {
+        return new StubUpstreams(settings, port);
+    }
+
+    // Stubs only, for pointing a separately started TripCompass (or anything else) at them
+    public static void main(String[] args) {
+        Settings settings = Settings.load(args);
+        start(settings, settings.getInt("stub.port", 7100));
+    }
+
+    public void stop() {
+        app.stop();
+    }
+
+    private Handler amadeus(String name, Function<Context, Object> body) {
+        return stub(name, body, AMADEUS_JSON,
+                Map.of("errors", List.of(Map.of("status", 429, "code", 38194, "title", "Too many requests",
+                        "detail", "The network rate limit is exceeded, please try again later"))),
+                Map.of("errors", List.of(Map.of("status", 500, "code", 141, "title", "SYSTEM ERROR HAS OCCURRED"))));
+    }
+
+    private Handler google(String name, Function<Context, Object> body) {
+        return stub(name, body, "application/json",
+                Map.of("status", "OVER_QUERY_LIMIT", "error_message", "You have exceeded your rate-limit for this API."),
+                Map.of("status", "UNKNOWN_ERROR"));
+    }
+
+    private Handler stub(String name, Function<Context, Object> body, String contentType,
+                         Object rateLimited, Object failed) {
+        StubBehavior behavior = StubBehavior.of(settings, name);
+        logger.info("{}: median {}ms, p99 {}ms, {}% errors, {}% 429", name, behavior.medianMillis(),
+                behavior.p99Millis(), behavior.errorRate() * 100, behavior.rateLimitRate() * 100);
+        return ctx -> {
+            StubBehavior.Outcome outcome = behavior.sampleOutcome();
+            int status = switch (outcome) {
+                case OK -> 200;
+                case RATE_LIMITED -> 429;
+                case ERROR -> 500;
+            };
+            String json = toJson(switch (outcome) {
+                case OK -> body.apply(ctx);
+                case RATE_LIMITED -> rateLimited;
+                case ERROR -> failed;
+            });
+            long delay = behavior.sampleDelayMillis();
+            ctx.future(() -> CompletableFuture.runAsync(() -> ctx.status(status).contentType(contentType).result(json),
+                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)));
+        };
+    }
+
+    private String toJson(Object value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Same query, same answer
+    private static Random random(Context ctx) {
+        String query = ctx.queryString();
+        return new Random(ctx.path().hashCode() * 31L + (query == null ? 0 : query.hashCode()));
+    }
+
+    private Object token(Context ctx) {
+        Map<String, Object> token = new LinkedHashMap<>();
+        token.put("type", "amadeusOAuth2Token");
+        token.put("username", "loadtest@example.org");
+        token.put("application_name", "tripcompass-loadtest");
+        token.put("client_id", ctx.formParam("client_id"));
+        token.put("token_type", "Bearer");
+        token.put("access_token", "stub-token-" + tokens.incrementAndGet());
+        token.put("expires_in", 1799);
+        token.put("state", "approved");
+        token.put("scope", "");
+        return token;
+    }
+
+    private Object flightOffers(Context ctx) {
+        Random random = random(ctx);
+        String origin = param(ctx, "originLocationCode", "ARN");
+        String destination = param(ctx, "destinationLocationCode", "NCE");
+        LocalDate date = LocalDate.parse(param(ctx, "departureDate", LocalDate.now().plusDays(30).toString()));
+        int adults = Integer.parseInt(param(ctx, "adults", "1"));
+
+        List<Object> offers = new ArrayList<>();
+        Map<String, String> carriers = new LinkedHashMap<>();
+        int segmentId = 1;
+        for (int i = 1; i <= 10; i++) {
+            String[] carrier = CARRIERS[random.nextInt(CARRIERS.length)];
+            carriers.put(carrier[0], carrier[2]);
+            List<String> path = new ArrayList<>(List.of(origin));
+            if (random.nextInt(3) > 0) {
+                path.add(HUBS[random.nextInt(HUBS.length)]);
+            }
+            path.add(destination);
+
+            int clock = 6 * 60 + random.nextInt(14 * 12) * 5;
+            int start = clock;
+            List<Object> segments = new ArrayList<>();
+            for (int leg = 0; leg + 1 < path.size(); leg++) {
+                int minutes = 70 + random.nextInt(24) * 5;
+                Map<String, Object> segment = new LinkedHashMap<>();
+                segment.put("departure", Map.of("iataCode", path.get(leg), "at", time(date, clock)));
+                segment.put("arrival", Map.of("iataCode", path.get(leg + 1), "at", time(date, clock + minutes)));
+                segment.put("carrierCode", carrier[0]);
+                segment.put("number", String.valueOf(100 + random.nextInt(4900)));
+                segment.put("aircraft", Map.of("code", "32N"));
+                segment.put("operating", Map.of("carrierCode", carrier[0]));
+                segment.put("duration", duration(minutes));
+                segment.put("id", String.valueOf(segmentId++));
+                segment.put("numberOfStops", 0);
+                segment.put("blacklistedInEU", false);
+                segments.add(segment);
+                clock += minutes + 45 + random.nextInt(20) * 5;
+            }
+            int arrival = clock - 45;
+            String total = String.format(Locale.US, "%.2f", adults * (80 + random.nextInt(50000) / 100.0));
+
+            Map<String, Object> offer = new LinkedHashMap<>();
+            offer.put("type", "flight-offer");
+            offer.put("id", String.valueOf(i));
+            offer.put("source", "GDS");
+            offer.put("instantTicketingRequired", false);
+            offer.put("nonHomogeneous", false);
+            offer.put("oneWay", false);
+            offer.put("lastTicketingDate", date.minusDays(1).toString());
+            offer.put("numberOfBookableSeats", 1 + random.nextInt(9));
+            offer.put("itineraries", List.of(Map.of("duration", duration(arrival - start), "segments", segments)));
+            offer.put("price", Map.of("currency", "EUR", "total", total, "base", total, "grandTotal", total));
+            offer.put("pricingOptions", Map.of("fareType", List.of("PUBLISHED"), "includedCheckedBagsOnly", false));
+            offer.put("validatingAirlineCodes", List.of(carrier[0]));
+            offers.add(offer);
+        }
+        return Map.of("meta", Map.of("count", offers.size()), "data", offers,
+                "dictionaries", Map.of("carriers", carriers, "currencies", Map.of("EUR", "EURO")));
+    }
+
+    private Object locations(Context ctx) {
+        String keyword = param(ctx, "keyword", "").toLowerCase(Locale.ROOT);
+        String subType = param(ctx, "subType", "CITY,AIRPORT").toUpperCase(Locale.ROOT);
+        int limit = Integer.parseInt(param(ctx, "page[limit]", "10"));
+        List<Object> data = new ArrayList<>();
+        for (Places.Place place : Places.ALL) {
+            boolean matches = place.city().toLowerCase(Locale.ROOT).startsWith(keyword)
+                    || place.airportName().toLowerCase(Locale.ROOT).startsWith(keyword)
+                    || place.cityCode().equalsIgnoreCase(keyword) || place.airportCode().equalsIgnoreCase(keyword);
+            if (!matches) {
+                continue;
+            }
+            if (subType.contains("CITY") && data.size() < limit) {
+                data.add(location(place, "CITY", null));
+            }
+            if (subType.contains("AIRPORT") && data.size() < limit) {
+                data.add(location(place, "AIRPORT", null));
+            }
+        }
+        return Map.of("meta", Map.of("count", data.size()), "data", data);
+    }
+
+    private Object airports(Context ctx) {
+        double lat = Double.parseDouble(param(ctx, "latitude", "0"));
+        double lng = Double.parseDouble(param(ctx, "longitude", "0"));
+        double radius = Double.parseDouble(param(ctx, "radius", "500"));
+        int limit = Integer.parseInt(param(ctx, "page[limit]", "10"));
+        List<Places.Place> near = new ArrayList<>(Places.ALL);
+        near.removeIf(p -> Places.distanceKm(lat, lng, p.airportLat(), p.airportLng()) > radius);
+        near.sort((a, b) -> Double.compare(Places.distanceKm(lat, lng, a.airportLat(), a.airportLng()),
+                Places.distanceKm(lat, lng, b.airportLat(), b.airportLng())));
+        List<Object> data = new ArrayList<>();
+        for (Places.Place place : near.subList(0, Math.min(limit, near.size()))) {
+            data.add(location(place, "AIRPORT", Places.distanceKm(lat, lng, place.airportLat(), place.airportLng())));
+        }
+        return Map.of("meta", Map.of("count", data.size()), "data", data);
+    }
+
+    private static Map<String, Object> location(Places.Place place, String subType, Double distanceKm) {
+        boolean airport = "AIRPORT".equals(subType);
+        String name = (airport ? place.airportName() : place.city()).toUpperCase(Locale.ROOT);
+        Map<String, Object> location = new LinkedHashMap<>();
+        location.put("type", "location");
+        location.put("subType", subType);
+        location.put("name", name);
+        location.put("detailedName", place.city().toUpperCase(Locale.ROOT) + "/" + place.countryCode() + ":" + name);
+        location.put("id", (airport ? "A" : "C") + (airport ? place.airportCode() : place.cityCode()));
+        location.put("iataCode", airport ? place.airportCode() : place.cityCode());
+        location.put("geoCode", Map.of("latitude", airport ? place.airportLat() : place.lat(),
+                "longitude", airport ? place.airportLng() : place.lng()));
+        location.put("address", Map.of("cityName", place.city().toUpperCase(Locale.ROOT),
+                "cityCode", place.cityCode(), "countryCode", place.countryCode()));
+        if (distanceKm != null) {
+            location.put("distance", Map.of("value", Math.round(distanceKm), "unit", "KM"));
+        }
+        return location;
+    }
+
+    private Object hotelsByGeocode(Context ctx) {
+        double lat = Double.parseDouble(param(ctx, "latitude", "0"));
+        double lng = Double.parseDouble(param(ctx, "longitude", "0"));
+        List<Object> data = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            double[] coords = hotelCoords(lat, lng, i);
+            Map<String, Object> hotel = new LinkedHashMap<>();
+            hotel.put("chainCode", "ST");
+            hotel.put("iataCode", "XXX");
+            hotel.put("dupeId", 700_000_000 + i);
+            hotel.put("name", "STUB HOTEL " + (i + 1));
+            hotel.put("hotelId", hotelId(lat, lng, i));
+            hotel.put("geoCode", Map.of("latitude", coords[0], "longitude", coords[1]));
+            hotel.put("address", Map.of("countryCode", "XX"));
+            hotel.put("distance", Map.of("value", Math.round(Places.distanceKm(lat, lng, coords[0], coords[1]) * 100) / 100.0,
+                    "unit", "KM"));
+            data.add(hotel);
+        }
+        return Map.of("meta", Map.of("count", data.size()), "data", data);
+    }
+
+    private Object hotelOffers(Context ctx) {
+        Random random = random(ctx);
+        String checkIn = param(ctx, "checkInDate", LocalDate.now().plusDays(30).toString());
+        String checkOut = param(ctx, "checkOutDate", LocalDate.parse(checkIn).plusDays(1).toString());
+        int adults = Integer.parseInt(param(ctx, "adults", "1"));
+        List<Object> data = new ArrayList<>();
+        for (String hotelId : param(ctx, "hotelIds", "").split(",")) {
+            // some hotels are sold out, as in the real answers
+            if (hotelId.isBlank() || random.nextInt(5) == 0) {
+                continue;
+            }
+            Map<String, Object> hotel = new LinkedHashMap<>();
+            hotel.put("type", "hotel");
+            hotel.put("hotelId", hotelId);
+            hotel.put("chainCode", "ST");
+            hotel.put("name", "STUB HOTEL " + hotelId);
+            hotel.put("cityCode", "XXX");
+            data.add(Map.of("type", "hotel-offers", "hotel", hotel, "available", true,
+                    "offers", List.of(offer(random, hotelId, checkIn, checkOut, adults))));
+        }
+        return Map.of("data", data);
+    }
+
+    private Object hotelSearch(Context ctx) {
+        Random random = random(ctx);
+        double lat = Double.parseDouble(param(ctx, "latitude", "0"));
+        double lng = Double.parseDouble(param(ctx, "longitude", "0"));
+        String checkIn = param(ctx, "checkInDate", LocalDate.now().plusDays(30).toString());
+        String checkOut = param(ctx, "checkOutDate", LocalDate.parse(checkIn).plusDays(1).toString());
+        int adults = Integer.parseInt(param(ctx, "adults", "1"));
+        int limit = Integer.parseInt(param(ctx, "page[limit]", "25"));
+        List<Object> data = new ArrayList<>();
+        for (int i = 0; i < limit; i++) {
+            double[] coords = hotelCoords(lat, lng, i);
+            String hotelId = hotelId(lat, lng, i);
+            Map<String, Object> hotel = new LinkedHashMap<>();
+            hotel.put("type", "hotel");
+            hotel.put("hotelId", hotelId);
+            hotel.put("chainCode", "ST");
+            hotel.put("name", "STUB HOTEL " + (i + 1));
+            hotel.put("rating", String.valueOf(2 + random.nextInt(4)));
+            hotel.put("latitude", coords[0]);
+            hotel.put("longitude", coords[1]);
+            hotel.put("address", Map.of("lines", List.of((1 + random.nextInt(120)) + " Stub Street"),
+                    "cityName", "STUBVILLE", "countryCode", "XX"));
+            data.add(Map.of("type", "hotel-offers", "hotel", hotel, "available", true,
+                    "offers", List.of(offer(random, hotelId, checkIn, checkOut, adults))));
+        }
+        return Map.of("data", data);
+    }
+
+    private static Map<String, Object> offer(Random random, String hotelId, String checkIn, String checkOut, int adults) {
+        String total = String.format(Locale.US, "%.2f", 60 + random.nextInt(60000) / 100.0);
+        Map<String, Object> offer = new LinkedHashMap<>();
+        offer.put("id", hotelId + "OFFER" + random.nextInt(1000));
+        offer.put("checkInDate", checkIn);
+        offer.put("checkOutDate", checkOut);
+        offer.put("rateCode", "RAC");
+        offer.put("room", Map.of("type", "A1K", "description", Map.of("text", "Standard room, king bed", "lang", "EN")));
+        offer.put("guests", Map.of("adults", adults));
+        offer.put("price", Map.of("currency", "EUR", "base", total, "total", total));
+        return offer;
+    }
+
+    private Object airlines(Context ctx) {
+        List<Object> data = new ArrayList<>();
+        for (String code : param(ctx, "airlineCodes", "").split(",")) {
+            for (String[] carrier : CARRIERS) {
+                if (carrier[0].equalsIgnoreCase(code.trim())) {
+                    data.add(Map.of("type", "airline", "iataCode", carrier[0], "icaoCode", carrier[1],
+                            "businessName", carrier[2], "commonName", carrier[2]));
+                }
+            }
+        }
+        return Map.of("meta", Map.of("count", data.size()), "data", data);
+    }
+
+    private Object directions(Context ctx) {
+        double[] from = coordinates(param(ctx, "origin", ""));
+        double[] to = coordinates(param(ctx, "destination", ""));
+        double km = Math.max(1, Places.distanceKm(from[0], from[1], to[0], to[1]) * 1.3);
+        long seconds = Math.round(km / 55 * 3600);
+        Map<String, Object> leg = Map.of(
+                "distance", Map.of("text", String.format(Locale.US, "%.1f km", km), "value", Math.round(km * 1000)),
+                "duration", Map.of("text", seconds / 3600 > 0 ? (seconds / 3600) + " hours " + (seconds % 3600 / 60) + " mins"
+                        : Math.max(1, seconds / 60) + " mins", "value", seconds));
+        return Map.of("status", "OK", "routes", List.of(Map.of(
+                "legs", List.of(leg), "overview_polyline", Map.of("points", POLYLINE), "summary", "E4")));
+    }
+
+    private Object geocode(Context ctx) {
+        double[] coords = coordinates(param(ctx, "address", ""));
+        return Map.of("status", "OK", "results", List.of(Map.of(
+                "formatted_address", param(ctx, "address", ""),
+                "geometry", Map.of("location", Map.of("lat", coords[0], "lng", coords[1])))));
+    }
+
+    private Object nearbyPlaces(Context ctx) {
+        double[] center = coordinates(param(ctx, "location", ""));
+        String type = param(ctx, "type", "point_of_interest");
+        List<Object> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            double[] coords = hotelCoords(center[0], center[1], i + 50);
+            results.add(Map.of("name", "Stub " + type.replace('_', ' ') + " " + (i + 1),
+                    "vicinity", (i + 1) + " Stub Street",
+                    "geometry", Map.of("location", Map.of("lat", coords[0], "lng", coords[1]))));
+        }
+        return Map.of("status", "OK", "results", results);
+    }
+
+    private Object findPlace(Context ctx) {
+        return Map.of("status", "OK", "candidates", List.of(Map.of(
+                "photos", List.of(Map.of("photo_reference", "stub-photo-" + Math.abs(param(ctx, "input", "").hashCode()))))));
+    }
+
+    // "lat,lng", a known place, or a stable point next to Stockholm for anything else
+    private static double[] coordinates(String text) {
+        String[] parts = text.split(",");
+        if (parts.length == 2) {
+            try {
+                return new double[]{Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim())};
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        Places.Place place = Places.find(text);
+        if (place != null) {
+            return text.trim().equalsIgnoreCase(place.airportCode()) && !place.airportCode().equals(place.cityCode())
+                    ? new double[]{place.airportLat(), place.airportLng()}
+                    : new double[]{place.lat(), place.lng()};
+        }
+        return hotelCoords(59.3293, 18.0686, Math.abs(text.hashCode() % 1000));
+    }
+
+    private static double[] hotelCoords(double lat, double lng, int i) {
+        Random random = new Random(Double.hashCode(lat) * 31L + Double.hashCode(lng) + i);
+        return new double[]{lat + (random.nextDouble() - 0.5) * 0.05, lng + (random.nextDouble() - 0.5) * 0.08};
+    }
+
+    private static String hotelId(double lat, double lng, int i) {
+        return String.format(Locale.ROOT, "ST%06d", Math.abs((Double.hashCode(lat) * 31 + Double.hashCode(lng)) * 17 + i) % 1_000_000);
+    }
+
+    private static String param(Context ctx, String name, String defaultValue) {
+        String value = ctx.queryParam(name);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+
+    private static String time(LocalDate date, int minutes) {
+        return date.plusDays(minutes / (24 * 60)).toString()
+                + String.format(Locale.ROOT, "T%02d:%02d:00", minutes / 60 % 24, minutes % 60);
+    }
+
+    private static String duration(int minutes) {
+        return minutes % 60 == 0 ? "PT" + minutes / 60 + "H" : "PT" + minutes / 60 + "H" + minutes % 60 + "M";
+    }
+}
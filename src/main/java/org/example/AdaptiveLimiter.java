@@ -0,0 +1,150 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit for upstream calls that follows the observed latency (AIMD).
+ * Every fast success while the limit is in use raises it by about one per window,
+ * every error or slow answer (more than LATENCY_TOLERANCE x the usual latency)
+ * cuts it by BACKOFF_RATIO. Callers over the limit wait until their deadline,
+ * and once maxQueued callers are waiting new ones are shed right away.
+ */
+public class AdaptiveLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveLimiter.class);
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    // weight of one sample in the usual latency, small so a short slow spell does not become the baseline
+    private static final double BASELINE_SMOOTHING = 0.05;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private double baselineNanos;
+
+    public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, int maxQueued) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Wait for a slot until deadlineNanos (System.nanoTime based). The returned permit must
+     * be completed exactly once with the outcome of the call; extra calls are ignored.
+     */
+    public Permit acquire(long deadlineNanos) throws TimeoutException, InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                if (queued >= maxQueued) {
+                    throw new TimeoutException(name + " is at its concurrency limit of " + (int) limit
+                            + " with " + queued + " waiting, request shed");
+                }
+                queued++;
+                try {
+                    while (inFlight >= (int) limit) {
+                        long remaining = deadlineNanos - System.nanoTime();
+                        if (remaining <= 0) {
+                            throw new TimeoutException("No free " + name + " slot before the deadline");
+                        }
+                        released.awaitNanos(remaining);
+                    }
+                } finally {
+                    queued--;
+                }
+            }
+            inFlight++;
+            return new Permit(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void complete(long rttNanos, Outcome outcome) {
+        lock.lock();
+        try {
+            boolean inUse = inFlight * 2 >= limit;
+            inFlight--;
+            double before = limit;
+            if (outcome == Outcome.SUCCESS) {
+                if (baselineNanos == 0) {
+                    baselineNanos = rttNanos;
+                }
+                if (rttNanos > baselineNanos * LATENCY_TOLERANCE) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                } else if (inUse) {
+                    // only grow while the limit is actually used, otherwise it climbs without evidence
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+                // slow samples move the baseline too, so a lasting latency shift becomes the new normal
+                baselineNanos += (rttNanos - baselineNanos) * BASELINE_SMOOTHING;
+            } else if (outcome == Outcome.DROPPED) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            }
+            if ((int) before != (int) limit) {
+                logger.debug("{} concurrency limit {} -> {} (usual latency {}ms)", name, (int) before, (int) limit,
+                        TimeUnit.NANOSECONDS.toMillis((long) baselineNanos));
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public enum Outcome {
+        // answered normally, the latency counts
+        SUCCESS,
+        // timeout, 429 or 5xx: upstream is overloaded
+        DROPPED,
+        // the call failed for its own reasons (bad input, cancelled), says nothing about upstream load
+        IGNORED
+    }
+
+    public final class Permit {
+        private final long startNanos;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        public void complete(Outcome outcome) {
+            if (done.compareAndSet(false, true)) {
+                AdaptiveLimiter.this.complete(System.nanoTime() - startNanos, outcome);
+            }
+        }
+    }
+}
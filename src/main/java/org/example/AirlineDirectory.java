@@ -0,0 +1,176 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Airline names for the carrier codes in flight offers, answered from memory so a request
+ * never waits for one. Starts from the bundled list and the last snapshot in the disk tier
+ * and is refreshed from Amadeus in the background. Codes first seen in an offer are collected
+ * for LOOKUP_DELAY, then looked up in one call, so concurrent searches share a single lookup.
+ */
+public class AirlineDirectory {
+    private static final Logger logger = LoggerFactory.getLogger(AirlineDirectory.class);
+    private static final String DEFAULT_RESOURCE = "/data/airlines.csv";
+    private static final Duration REFRESH_INTERVAL = Duration.ofHours(24);
+    // first refresh when no snapshot was on disk, soon after startup but out of its way
+    private static final Duration FIRST_REFRESH = Duration.ofMinutes(1);
+    private static final Duration LOOKUP_DELAY = Duration.ofMillis(500);
+    // codes Amadeus does not know are asked again after this
+    private static final Duration UNKNOWN_RETRY = Duration.ofHours(6);
+    private static final int BATCH_SIZE = 50;
+    private static final String SNAPSHOT_KEY = "all";
+
+    private final Lookup lookup;
+    private final DiskCache.Store<Map<String, String>> snapshot;
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    // code -> System.nanoTime() after which it may be asked again
+    private final Map<String, Long> unknown = new ConcurrentHashMap<>();
+    private final AtomicBoolean lookupScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "airline-directory");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Batch lookup of airline names by carrier code, AmadeusService::getAirlineNames in the app
+    @FunctionalInterface
+    public interface Lookup {
+        Map<String, String> names(List<String> codes) throws Exception;
+    }
+
+    public AirlineDirectory(Lookup lookup, DiskCache diskCache) {
+        this.lookup = lookup;
+        this.snapshot = diskCache.store("airlines", diskCache.mapType(String.class, String.class), Duration.ofDays(30));
+        loadBundled();
+        Map<String, String> stored = snapshot.get(SNAPSHOT_KEY);
+        if (stored != null) {
+            names.putAll(stored);
+        }
+        logger.info("Airline directory preloaded {} airlines", names.size());
+        long first = (stored != null ? REFRESH_INTERVAL : FIRST_REFRESH).toMillis();
+        background.scheduleWithFixedDelay(this::refresh, first, REFRESH_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Name for the code, or null when it is not known yet (it is then looked up in the background)
+    public String name(String code) {
+        if (code == null || code.isBlank()) {
+            return null;
+        }
+        String key = code.trim().toUpperCase(Locale.ROOT);
+        String name = names.get(key);
+        if (name == null) {
+            Long retryAt = unknown.get(key);
+            if (retryAt == null || System.nanoTime() - retryAt >= 0) {
+                pending.add(key);
+                scheduleLookup();
+            }
+        }
+        return name;
+    }
+
+    // Same flights with airlineName filled in wherever the carrier is known
+    public List<FlightSummary> enrich(List<FlightSummary> flights) {
+        List<FlightSummary> result = new ArrayList<>(flights.size());
+        for (FlightSummary flight : flights) {
+            result.add(flight.withAirlineNames(this::name));
+        }
+        return result;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    private void scheduleLookup() {
+        if (lookupScheduled.compareAndSet(false, true)) {
+            background.schedule(this::lookupPending, LOOKUP_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void lookupPending() {
+        lookupScheduled.set(false);
+        List<String> codes = new ArrayList<>(pending);
+        pending.removeAll(codes);
+        if (!codes.isEmpty()) {
+            fetch(codes);
+        }
+    }
+
+    // Ask Amadeus again for every known code, in batches at background priority
+    private void refresh() {
+        List<String> codes = new ArrayList<>(names.keySet());
+        fetch(codes);
+        logger.debug("Airline directory refreshed, {} airlines", names.size());
+    }
+
+    private void fetch(List<String> codes) {
+        boolean changed = false;
+        for (int from = 0; from < codes.size(); from += BATCH_SIZE) {
+            List<String> batch = codes.subList(from, Math.min(codes.size(), from + BATCH_SIZE));
+            try {
+                Map<String, String> fetched = AmadeusScheduler.withPriority(AmadeusScheduler.Priority.BACKGROUND,
+                        () -> lookup.names(batch));
+                long retryAt = System.nanoTime() + UNKNOWN_RETRY.toNanos();
+                for (String code : batch) {
+                    String name = fetched.get(code);
+                    if (name != null && !name.isBlank()) {
+                        changed |= !name.equals(names.put(code, name));
+                        unknown.remove(code);
+                    } else if (!names.containsKey(code)) {
+                        unknown.put(code, retryAt);
+                    }
+                }
+            } catch (Exception e) {
+                // nothing is marked unknown, the codes are asked again when they show up next
+                logger.warn("Airline name lookup for {} codes failed: {}", batch.size(), e.getMessage());
+            }
+        }
+        if (changed) {
+            snapshot.put(SNAPSHOT_KEY, new HashMap<>(names));
+        }
+    }
+
+    // Columns: iata,name
+    private void loadBundled() {
+        try (InputStream in = AirlineDirectory.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                logger.warn("Airline dataset {} not found, names come from Amadeus only", DEFAULT_RESOURCE);
+                return;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank() || line.startsWith("#") || line.startsWith("iata,")) {
+                        continue;
+                    }
+                    String[] parts = line.split(",", 2);
+                    if (parts.length == 2 && !parts[0].isBlank() && !parts[1].isBlank()) {
+                        names.put(parts[0].trim().toUpperCase(Locale.ROOT), parts[1].trim());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to load airline dataset: {}", e.getMessage());
+        }
+    }
+}
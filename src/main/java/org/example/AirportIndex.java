@@ -0,0 +1,297 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory airport lookup built from a bundled CSV file.
+ * Airports are stored as unit vectors in a k-d tree laid out in plain arrays,
+ * so nearest and k-nearest queries never leave the process.
+ */
+public class AirportIndex {
+    private static final Logger logger = LoggerFactory.getLogger(AirportIndex.class);
+    private static final String DEFAULT_RESOURCE = "/data/airports.csv";
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double LARGE_AIRPORT_DETOUR = 2.5;
+
+    // All arrays are in k-d tree order: the median of every range is the split node
+    private final String[] codes;
+    private final String[] names;
+    private final String[] sizes;
+    private final double[] lats;
+    private final double[] lngs;
+    private final double[][] axes;
+    // IATA code -> position in the arrays above
+    private final Map<String, Integer> byCode;
+
+    private AirportIndex(List<Row> rows) {
+        int n = rows.size();
+        double[][] points = new double[3][n];
+        for (int i = 0; i < n; i++) {
+            Row row = rows.get(i);
+            double latRad = Math.toRadians(row.lat());
+            double lngRad = Math.toRadians(row.lng());
+            points[0][i] = Math.cos(latRad) * Math.cos(lngRad);
+            points[1][i] = Math.cos(latRad) * Math.sin(lngRad);
+            points[2][i] = Math.sin(latRad);
+        }
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        build(order, points, 0, n, 0);
+
+        this.codes = new String[n];
+        this.names = new String[n];
+        this.sizes = new String[n];
+        this.lats = new double[n];
+        this.lngs = new double[n];
+        this.axes = new double[3][n];
+        this.byCode = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            Row row = rows.get(order[i]);
+            codes[i] = row.iata();
+            names[i] = row.name();
+            sizes[i] = row.size();
+            lats[i] = row.lat();
+            lngs[i] = row.lng();
+            byCode.put(row.iata(), i);
+            for (int axis = 0; axis < 3; axis++) {
+                axes[axis][i] = points[axis][order[i]];
+            }
+        }
+    }
+
+    // Load the bundled dataset, or the file given in AIRPORTS_FILE when set
+    public static AirportIndex load(String overridePath) {
+        try {
+            if (overridePath != null && !overridePath.isBlank()) {
+                try (InputStream in = Files.newInputStream(Path.of(overridePath))) {
+                    return fromCsv(in);
+                }
+            }
+            try (InputStream in = AirportIndex.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+                if (in == null) {
+                    logger.warn("Airport dataset {} not found, local airport lookups disabled", DEFAULT_RESOURCE);
+                    return empty();
+                }
+                return fromCsv(in);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to load airport dataset, local airport lookups disabled: {}", e.getMessage());
+            return empty();
+        }
+    }
+
+    public static AirportIndex empty() {
+        return new AirportIndex(List.of());
+    }
+
+    // Columns: iata,size,lat,lng,name (name is last so it may contain commas)
+    public static AirportIndex fromCsv(InputStream in) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#") || line.startsWith("iata,")) {
+                    continue;
+                }
+                String[] parts = line.split(",", 5);
+                if (parts.length < 5) {
+                    continue;
+                }
+                try {
+                    String iata = parts[0].trim().toUpperCase(Locale.ROOT);
+                    double lat = Double.parseDouble(parts[2].trim());
+                    double lng = Double.parseDouble(parts[3].trim());
+                    if (iata.length() != 3 || lat < -90 || lat > 90 || lng < -180 || lng > 180) {
+                        continue;
+                    }
+                    rows.add(new Row(iata, parts[1].trim(), lat, lng, parts[4].trim()));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        logger.info("Loaded {} airports into local index", rows.size());
+        return new AirportIndex(rows);
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    // Airport with the IATA code, or null; distanceKm is 0
+    public Airport find(String iata) {
+        Integer idx = iata == null ? null : byCode.get(iata.trim().toUpperCase(Locale.ROOT));
+        return idx == null ? null : new Airport(codes[idx], names[idx], lats[idx], lngs[idx], sizes[idx], 0);
+    }
+
+    // Every airport in the index, distanceKm is 0
+    public List<Airport> all() {
+        List<Airport> result = new ArrayList<>(codes.length);
+        for (int i = 0; i < codes.length; i++) {
+            result.add(new Airport(codes[i], names[i], lats[i], lngs[i], sizes[i], 0));
+        }
+        return result;
+    }
+
+    // Best airport within the radius, or null. A large airport wins over a closer
+    // regional one if it is not much further away (LHR over LCY for central London).
+    public Airport nearest(double lat, double lng, double radiusKm) {
+        List<Airport> candidates = nearest(lat, lng, radiusKm, 5);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Airport closest = candidates.get(0);
+        for (Airport candidate : candidates) {
+            if ("large".equals(candidate.size())) {
+                return candidate.distanceKm() <= Math.max(closest.distanceKm() * LARGE_AIRPORT_DETOUR, 30)
+                        ? candidate
+                        : closest;
+            }
+        }
+        return closest;
+    }
+
+    // Up to limit airports within the radius, closest first
+    public List<Airport> nearest(double lat, double lng, double radiusKm, int limit) {
+        if (limit <= 0 || codes.length == 0 || radiusKm <= 0) {
+            return List.of();
+        }
+        double latRad = Math.toRadians(lat);
+        double lngRad = Math.toRadians(lng);
+        double[] query = {
+                Math.cos(latRad) * Math.cos(lngRad),
+                Math.cos(latRad) * Math.sin(lngRad),
+                Math.sin(latRad)
+        };
+        // compare squared chord lengths, they grow with the great-circle distance
+        double angle = Math.min(Math.PI, radiusKm / EARTH_RADIUS_KM);
+        double chord = 2 * Math.sin(angle / 2);
+
+        Neighbours neighbours = new Neighbours(Math.min(limit, codes.length), chord * chord);
+        search(query, 0, codes.length, 0, neighbours);
+
+        List<Airport> result = new ArrayList<>(neighbours.count);
+        for (int i = 0; i < neighbours.count; i++) {
+            int idx = neighbours.indexes[i];
+            double distanceKm = 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(neighbours.distances[i]) / 2));
+            result.add(new Airport(codes[idx], names[idx], lats[idx], lngs[idx], sizes[idx], distanceKm));
+        }
+        return result;
+    }
+
+    private void search(double[] query, int lo, int hi, int depth, Neighbours neighbours) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double dx = axes[0][mid] - query[0];
+        double dy = axes[1][mid] - query[1];
+        double dz = axes[2][mid] - query[2];
+        neighbours.offer(mid, dx * dx + dy * dy + dz * dz);
+
+        int axis = depth % 3;
+        double diff = query[axis] - axes[axis][mid];
+        if (diff < 0) {
+            search(query, lo, mid, depth + 1, neighbours);
+            if (diff * diff <= neighbours.bound()) {
+                search(query, mid + 1, hi, depth + 1, neighbours);
+            }
+        } else {
+            search(query, mid + 1, hi, depth + 1, neighbours);
+            if (diff * diff <= neighbours.bound()) {
+                search(query, lo, mid, depth + 1, neighbours);
+            }
+        }
+    }
+
+    // Put the median of every range in the middle, smaller values left and larger right
+    private static void build(int[] order, double[][] points, int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(order, points[depth % 3], lo, hi - 1, mid);
+        build(order, points, lo, mid, depth + 1);
+        build(order, points, mid + 1, hi, depth + 1);
+    }
+
+    private static void select(int[] order, double[] values, int left, int right, int k) {
+        while (left < right) {
+            double pivot = values[order[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[order[i]] < pivot) i++;
+                while (values[order[j]] > pivot) j--;
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    // Small sorted buffer of the best candidates found so far
+    private static final class Neighbours {
+        private final int[] indexes;
+        private final double[] distances;
+        private final double maxDistance;
+        private int count;
+
+        Neighbours(int capacity, double maxDistance) {
+            this.indexes = new int[capacity];
+            this.distances = new double[capacity];
+            this.maxDistance = maxDistance;
+        }
+
+        double bound() {
+            return count == indexes.length ? distances[count - 1] : maxDistance;
+        }
+
+        void offer(int index, double distance) {
+            if (distance > maxDistance || (count == indexes.length && distance >= distances[count - 1])) {
+                return;
+            }
+            int pos = count == indexes.length ? count - 1 : count++;
+            while (pos > 0 && distances[pos - 1] > distance) {
+                indexes[pos] = indexes[pos - 1];
+                distances[pos] = distances[pos - 1];
+                pos--;
+            }
+            indexes[pos] = index;
+            distances[pos] = distance;
+        }
+    }
+
+    public record Airport(String iata, String name, double lat, double lng, String size, double distanceKm) {
+    }
+
+    private record Row(String iata, String size, double lat, double lng, String name) {
+    }
+}
@@ -0,0 +1,212 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client side rate limiting for all Amadeus traffic (the SDK calls and the OkHttp hotel search).
+ * Every call takes a token from the bucket of its endpoint family and from one global bucket
+ * that is sized just under the account quota. Callers queue per family, ordered by priority and
+ * then deadline, and when tokens are scarce the best waiter across all families goes first.
+ * A caller that cannot get a token before its deadline fails with a TimeoutException instead
+ * of being sent late, and a 429 pauses its family for a moment instead of retrying straight into it.
+ */
+public class AmadeusScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(AmadeusScheduler.class);
+    private static final Duration RATE_LIMITED_PAUSE = Duration.ofSeconds(1);
+    // the global bucket only holds one token, so calls are spread out instead of sent in bursts
+    private static final double GLOBAL_BURST = 1;
+    private static final ThreadLocal<Priority> CURRENT_PRIORITY = ThreadLocal.withInitial(() -> Priority.INTERACTIVE);
+
+    // Lower ordinal goes first
+    public enum Priority {
+        INTERACTIVE,
+        FALLBACK,
+        BACKGROUND
+    }
+
+    public enum Family {
+        REFERENCE_DATA,
+        FLIGHT_SHOPPING,
+        HOTEL_SHOPPING,
+        AUTH
+    }
+
+    private static final Comparator<Waiter> ORDER = Comparator
+            .comparing(Waiter::priority)
+            .thenComparing((a, b) -> Long.signum(a.deadlineNanos() - b.deadlineNanos()))
+            .thenComparingLong(Waiter::sequence);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Bucket global;
+    private final Map<Family, Bucket> buckets = new EnumMap<>(Family.class);
+    private final Map<Family, PriorityQueue<Waiter>> queues = new EnumMap<>(Family.class);
+    private long sequence;
+
+    /**
+     * requestsPerSecond is the total for the account. Every family may use all of it on its
+     * own (burst of one second), the global bucket keeps the sum under it.
+     */
+    public AmadeusScheduler(double requestsPerSecond) {
+        double rate = Math.max(0.1, requestsPerSecond);
+        long now = System.nanoTime();
+        this.global = new Bucket(rate, GLOBAL_BURST, now);
+        for (Family family : Family.values()) {
+            buckets.put(family, new Bucket(rate, Math.max(1, rate), now));
+            queues.put(family, new PriorityQueue<>(ORDER));
+        }
+        logger.info("Amadeus calls limited to {} per second", rate);
+    }
+
+    // Priority for the Amadeus calls made by this thread, INTERACTIVE unless set
+    public static Priority currentPriority() {
+        return CURRENT_PRIORITY.get();
+    }
+
+    // Run the task with every Amadeus call in it scheduled at the given priority
+    public static <T> T withPriority(Priority priority, Callable<T> task) throws Exception {
+        Priority previous = CURRENT_PRIORITY.get();
+        CURRENT_PRIORITY.set(priority);
+        try {
+            return task.call();
+        } finally {
+            CURRENT_PRIORITY.set(previous);
+        }
+    }
+
+    /**
+     * Wait for a token of the family. Fails right away if the queue in front of the caller
+     * cannot drain before deadlineNanos (System.nanoTime based), and with a TimeoutException
+     * when the deadline passes while queued.
+     */
+    public void acquire(Family family, Priority priority, long deadlineNanos) throws TimeoutException, InterruptedException {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            Bucket bucket = buckets.get(family);
+            PriorityQueue<Waiter> queue = queues.get(family);
+            Waiter me = new Waiter(family, priority, deadlineNanos, sequence++);
+
+            // every waiter ahead needs a token of this family and of the global bucket
+            long ahead = queue.stream().filter(w -> ORDER.compare(w, me) < 0).count();
+            long estimate = Math.max(bucket.nanosUntilToken(now), global.nanosUntilToken(now))
+                    + ahead * Math.max(bucket.nanosPerToken(), global.nanosPerToken());
+            if (estimate > deadlineNanos - now) {
+                throw new TimeoutException("Amadeus " + family + " queue would not drain within the deadline ("
+                        + ahead + " ahead)");
+            }
+
+            queue.add(me);
+            try {
+                while (true) {
+                    now = System.nanoTime();
+                    if (isNext(me, now)) {
+                        bucket.take();
+                        global.take();
+                        return;
+                    }
+                    long remaining = deadlineNanos - now;
+                    if (remaining <= 0) {
+                        throw new TimeoutException("Timed out waiting for an Amadeus " + family + " token");
+                    }
+                    // tokens refill with time, grants and departures signal
+                    long untilToken = Math.max(bucket.nanosUntilToken(now), global.nanosUntilToken(now));
+                    long wait = untilToken > 0 ? Math.min(remaining, untilToken) : remaining;
+                    changed.awaitNanos(Math.max(TimeUnit.MILLISECONDS.toNanos(1), wait));
+                }
+            } finally {
+                queue.remove(me);
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Upstream answered 429: drain the family and pause it so the retries queue instead
+    public void onRateLimited(Family family) {
+        lock.lock();
+        try {
+            buckets.get(family).pause(System.nanoTime(), RATE_LIMITED_PAUSE.toNanos());
+            logger.warn("Amadeus {} rate limited, pausing it for {}ms", family, RATE_LIMITED_PAUSE.toMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Head of its own queue, tokens available, and no better waiter in another family could take them
+    private boolean isNext(Waiter me, long now) {
+        if (queues.get(me.family()).peek() != me
+                || buckets.get(me.family()).nanosUntilToken(now) > 0
+                || global.nanosUntilToken(now) > 0) {
+            return false;
+        }
+        for (Map.Entry<Family, PriorityQueue<Waiter>> entry : queues.entrySet()) {
+            Waiter head = entry.getValue().peek();
+            if (head != null && head != me && ORDER.compare(head, me) < 0
+                    && buckets.get(entry.getKey()).nanosUntilToken(now) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Guarded by the scheduler lock
+    private static final class Bucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt;
+
+        Bucket(double perSecond, double capacity, long now) {
+            this.tokensPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.refilledAt = now;
+        }
+
+        long nanosUntilToken(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                return 0;
+            }
+            // refilledAt is in the future while paused
+            return Math.max(0, refilledAt - now) + (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+
+        long nanosPerToken() {
+            return (long) Math.ceil(1 / tokensPerNano);
+        }
+
+        void take() {
+            tokens -= 1;
+        }
+
+        void pause(long now, long pauseNanos) {
+            tokens = 0;
+            refilledAt = now + pauseNanos;
+        }
+
+        private void refill(long now) {
+            if (now - refilledAt > 0) {
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+                refilledAt = now;
+            }
+        }
+    }
+
+    private record Waiter(Family family, Priority priority, long deadlineNanos, long sequence) {
+    }
+}
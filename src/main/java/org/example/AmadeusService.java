@@ -1,111 +1,518 @@
 package org.example;
 
 import com.amadeus.Amadeus;
+import com.amadeus.Configuration;
 import com.amadeus.Params;
 import com.amadeus.exceptions.ResponseException;
 import com.amadeus.resources.Location;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.URI;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class AmadeusService {
     private static final Logger logger = LoggerFactory.getLogger(AmadeusService.class);
     private final Gson gson = new Gson();
 
     private final Amadeus amadeus;
-    private final ExecutorService executor = Executors.newFixedThreadPool(6);
+    private final AirportIndex airportIndex;
+    private final LocationAutocomplete autocomplete;
+    private final GeocodeCache geocodeCache;
+    // keywords Amadeus already answered, what it said is in the autocomplete index now
+    private final BoundedCache<String, Boolean> searchedKeywords = new BoundedCache<>("location keywords", 10_000, Duration.ofHours(12));
+    private final ExecutorService executor;
+    private final AmadeusScheduler scheduler;
+    // caps upstream calls in flight, independent of how many threads the executor has
+    private final AdaptiveLimiter limiter;
     private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
     private static final int MAX_RETRIES = 2;
+    private static final int DEFAULT_MAX_CONCURRENCY = 16;
+    // Amadeus self-service allows 10 requests per second, stay just under it
+    private static final double DEFAULT_RATE_LIMIT = 9;
+    // hotelIds per hotel-offers call (keeps the url well under the API limits) and chunks in flight per batch
+    private static final int HOTEL_OFFER_CHUNK_SIZE = 20;
+    private static final int HOTEL_OFFER_CHUNK_CONCURRENCY = 3;
+    // budget of calls made outside a request: every attempt times out plus the backoffs
+    private static final Duration SHARED_CALL_TIMEOUT = REQUEST_TIMEOUT.multipliedBy(MAX_RETRIES + 1).plusSeconds(3);
+    // a retry with less time than this left is not worth sending
+    private static final Duration MIN_ATTEMPT = Duration.ofSeconds(1);
+    private final Map<String, SharedCall> sharedCalls = new ConcurrentHashMap<>();
+    // keyed by operation name
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private static final int BREAKER_FAILURES = 5;
+    private static final Duration BREAKER_OPEN = Duration.ofSeconds(15);
+    private static final int LATENCY_SAMPLES = 100;
+    // no hedging until the p95 is based on enough calls
+    private static final int HEDGE_MIN_SAMPLES = 20;
+    private static final int LOCATION_RESULTS = 5;
+    // an indexed airport this close answers alone; an unindexed one could at most be a few minutes closer
+    private static final double LOCAL_AIRPORT_TRUSTED_KM = 30;
+    // shared calls run detached from any one caller, so one caller giving up does not cancel them for the rest
+    private final ExecutorService coalescer = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("amadeus-shared-", 0).factory());
 
     // Initialize the amadeus api
     public AmadeusService(String apiKey, String apiSecret) {
-        this.amadeus = Amadeus.builder(apiKey, apiSecret).build();
+        this(apiKey, apiSecret, AirportIndex.load(null));
     }
 
-    // Try to execute the action, if fail retry
-    private <T> T executeWithRetry(String operation, Callable<T> action) throws ResponseException, TimeoutException {
-        int attempt = 0;
-        long delayMillis = 300;
-        while (true) {
+    // Airport lookups use the local index first and only call Amadeus when it has no match
+    public AmadeusService(String apiKey, String apiSecret, AirportIndex airportIndex) {
+        this(apiKey, apiSecret, airportIndex, true, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    public AmadeusService(String apiKey, String apiSecret, AirportIndex airportIndex,
+                          boolean virtualThreads, int maxConcurrency) {
+        this(apiKey, apiSecret, airportIndex, virtualThreads, maxConcurrency, new AmadeusScheduler(DEFAULT_RATE_LIMIT),
+                new GeocodeCache(DiskCache.disabled()), AppConfig.DEFAULT_AMADEUS_BASE_URL);
+    }
+
+    /**
+     * With virtualThreads every SDK call gets its own virtual thread, otherwise a fixed
+     * pool of maxConcurrency platform threads is used. In both modes an adaptive limit
+     * (at most maxConcurrency) follows the upstream latency; extra callers wait for a slot
+     * inside their own timeout or are shed when too many already wait. The call path only uses java.util.concurrent primitives (no
+     * synchronized), so waiting virtual threads never pin their carrier. The scheduler
+     * is shared with HotelSearchService so both stay under one rate limit, the geocode
+     * cache with the Google geocoding in MashupJavalin. The SDK talks to baseUrl.
+     */
+    public AmadeusService(String apiKey, String apiSecret, AirportIndex airportIndex,
+                          boolean virtualThreads, int maxConcurrency, AmadeusScheduler scheduler,
+                          GeocodeCache geocodeCache, String baseUrl) {
+        this.amadeus = buildClient(apiKey, apiSecret, baseUrl);
+        this.airportIndex = airportIndex != null ? airportIndex : AirportIndex.empty();
+        this.autocomplete = LocationAutocomplete.load(this.airportIndex);
+        this.geocodeCache = geocodeCache;
+        this.scheduler = scheduler;
+        int limit = Math.max(1, maxConcurrency);
+        // start at half the cap and let the observed latency move it
+        this.limiter = new AdaptiveLimiter("Amadeus", Math.max(2, limit / 2), 1, limit, limit * 4);
+        this.executor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("amadeus-", 0).factory())
+                : Executors.newFixedThreadPool(limit);
+        logger.info("Amadeus calls use {} threads, adaptive limit of at most {} in flight", virtualThreads ? "virtual" : "platform", limit);
+    }
+
+    // The SDK only knows its test and production hosts, any other base URL is set as a custom host
+    private static Amadeus buildClient(String apiKey, String apiSecret, String baseUrl) {
+        Configuration configuration = Amadeus.builder(apiKey, apiSecret);
+        if (baseUrl != null && !baseUrl.isBlank() && !AppConfig.DEFAULT_AMADEUS_BASE_URL.equals(baseUrl)) {
+            URI uri = URI.create(baseUrl);
+            boolean ssl = !"http".equalsIgnoreCase(uri.getScheme());
+            configuration.setHost(uri.getHost())
+                    .setSsl(ssl)
+                    .setPort(uri.getPort() != -1 ? uri.getPort() : ssl ? 443 : 80);
+            logger.info("Amadeus SDK uses {}", baseUrl);
+        }
+        return configuration.build();
+    }
+
+    /**
+     * Try to execute the action, if it fails retry. Every attempt gets REQUEST_TIMEOUT but
+     * never more than the deadline leaves, and a retry is only made when the backoff plus
+     * MIN_ATTEMPT still fit in it. Client errors are not retried, and neither is anything
+     * once the operation's circuit is open. The backoff is a delayed task, so no thread
+     * sleeps through it. Cancelling the returned future stops the running attempt.
+     */
+    private <T> CompletableFuture<T> executeWithRetry(String operation, AmadeusScheduler.Family family,
+                                                      AmadeusScheduler.Priority priority, Deadline deadline,
+                                                      Callable<T> action) {
+        CircuitBreaker breaker = breakers.computeIfAbsent(operation,
+                op -> new CircuitBreaker(op, BREAKER_FAILURES, BREAKER_OPEN));
+        Retry<T> retry = new Retry<>(operation, family, priority, deadline, breaker, action);
+        long started = System.nanoTime();
+        retry.result.whenComplete((value, error) -> {
+            Future<?> running = retry.running;
+            if (retry.result.isCancelled()) {
+                // the callers gave up, that says nothing about how long Amadeus takes
+                if (running != null) {
+                    running.cancel(true);
+                }
+                return;
+            }
+            retry.metrics.record(System.nanoTime() - started, error != null);
+        });
+        startAttempt(retry, 0, 300);
+        return retry.result;
+    }
+
+    private <T> void startAttempt(Retry<T> retry, int attempt, long delayMillis) {
+        if (retry.result.isDone()) {
+            return;
+        }
+        retry.running = coalescer.submit(() -> {
             try {
-                // small helper so every call has timeout and retry
-                return runWithTimeout(action, REQUEST_TIMEOUT);
-            } catch (TimeoutException e) {
-                logger.error("{} timed out on attempt {}", operation, attempt + 1);
-                if (attempt >= MAX_RETRIES) throw e;
-            } catch (ResponseException e) {
-                logger.warn("{} failed with status {} attempt {}", operation, e.getCode(), attempt + 1);
-                if (attempt >= MAX_RETRIES) throw e;
-            } catch (Exception e) {
-                logger.error("{} unexpected error on attempt {}", operation, attempt + 1, e);
-                if (attempt >= MAX_RETRIES) {
-                    if (e instanceof ResponseException re) {
-                        throw re;
-                    }
-                    throw new RuntimeException(e);
+                long attemptDeadline = retry.deadline.capNanos(REQUEST_TIMEOUT);
+                retry.result.complete(runAttempt(retry.operation, retry.family, retry.priority, retry.breaker,
+                        retry.action, attemptDeadline));
+            } catch (Throwable e) {
+                if (retry.result.isDone()) {
+                    // cancelled by the caller, not an upstream failure
+                    return;
+                }
+                if (!shouldRetry(retry, e, attempt)) {
+                    retry.result.completeExceptionally(e);
+                    return;
+                }
+                if (retry.deadline.remainingMillis() < delayMillis + MIN_ATTEMPT.toMillis()) {
+                    logger.warn("{} not retried, only {}ms left of the request deadline",
+                            retry.operation, retry.deadline.remainingMillis());
+                    retry.result.completeExceptionally(e);
+                    return;
+                }
+                retry.metrics.retry();
+                CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, coalescer)
+                        .execute(() -> startAttempt(retry, attempt + 1, Math.min(delayMillis * 2, 2000)));
+            }
+        });
+        // cancelled while the attempt was being submitted
+        if (retry.result.isCancelled()) {
+            retry.running.cancel(true);
+        }
+    }
+
+    // Log the failed attempt and decide whether another one makes sense
+    private boolean shouldRetry(Retry<?> retry, Throwable e, int attempt) {
+        boolean retriesLeft = attempt < MAX_RETRIES && retry.breaker.state() != CircuitBreaker.State.OPEN;
+        if (e instanceof CircuitOpenException) {
+            // never sent, so neither a timeout nor worth retrying before the circuit lets a probe through
+            logger.warn("{} refused on attempt {}: {}", retry.operation, attempt + 1, e.getMessage());
+            return false;
+        }
+        if (e instanceof TimeoutException) {
+            retry.metrics.timeout();
+            logger.error("{} timed out on attempt {}: {}", retry.operation, attempt + 1, e.getMessage());
+            return retriesLeft;
+        }
+        if (e instanceof ResponseException re) {
+            logger.warn("{} failed with status {} attempt {}", retry.operation, re.getCode(), attempt + 1);
+            if ("429".equals(re.getCode())) {
+                retry.metrics.rateLimited();
+                // the retry waits in the scheduler queue until the family is allowed again
+                scheduler.onRateLimited(retry.family);
+            }
+            return retriesLeft && isOverloaded(re);
+        }
+        logger.error("{} unexpected error on attempt {}", retry.operation, attempt + 1, e);
+        return retriesLeft;
+    }
+
+    /**
+     * Single-flight wrapper around executeWithRetry: concurrent callers asking for the
+     * same operation with the same params share one upstream call. The call runs within
+     * the deadline of the caller that started it (SHARED_CALL_TIMEOUT outside a request)
+     * and each caller waits at most until its own deadline. The shared call is only
+     * cancelled when the last caller waiting for it gives up.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T executeShared(String operation, AmadeusScheduler.Family family, Params params,
+                                Callable<T> action) throws ResponseException, TimeoutException {
+        Deadline deadline = Deadline.currentOr(SHARED_CALL_TIMEOUT);
+        if (deadline.isExpired()) {
+            throw new TimeoutException(operation + " skipped, the request deadline has passed");
+        }
+        String key = sharedCallKey(operation, params);
+        // the shared call is scheduled at the priority of the caller that started it
+        AmadeusScheduler.Priority priority = AmadeusScheduler.currentPriority();
+        SharedCall call = sharedCalls.compute(key, (k, existing) -> {
+            SharedCall joined = existing != null ? existing : new SharedCall();
+            joined.waiters.incrementAndGet();
+            return joined;
+        });
+        if (call.started.compareAndSet(false, true)) {
+            CompletableFuture<T> upstream = executeWithRetry(operation, family, priority, deadline, action);
+            call.worker = upstream;
+            upstream.whenComplete((value, error) -> {
+                sharedCalls.remove(key, call);
+                if (error != null) {
+                    call.result.completeExceptionally(error);
+                } else {
+                    call.result.complete(value);
                 }
+            });
+        } else {
+            logger.debug("{} joined an in-flight call", operation);
+        }
+
+        boolean done = false;
+        try {
+            T value = (T) call.result.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+            done = true;
+            return value;
+        } catch (TimeoutException e) {
+            throw new TimeoutException(operation + " did not finish within the request deadline");
+        } catch (ExecutionException e) {
+            done = true;
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof ResponseException re) {
+                throw re;
+            }
+            if (cause instanceof TimeoutException te) {
+                throw te;
             }
-            attempt++;
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted", e);
+        } finally {
+            if (!done) {
+                leaveSharedCall(key, call);
+            }
+        }
+    }
+
+    // Caller stopped waiting; if nobody else is waiting either, stop the upstream call
+    private void leaveSharedCall(String key, SharedCall call) {
+        boolean[] abandon = {false};
+        sharedCalls.computeIfPresent(key, (k, current) -> {
+            if (current == call && call.waiters.decrementAndGet() == 0 && !call.result.isDone()) {
+                abandon[0] = true;
+                return null;
+            }
+            return current;
+        });
+        if (abandon[0] && call.worker != null) {
+            call.worker.cancel(true);
+        }
+    }
+
+    // Same operation + same params (order, case and padding ignored) = same upstream call
+    private static String sharedCallKey(String operation, Params params) {
+        StringBuilder key = new StringBuilder(operation);
+        for (Map.Entry<String, String> entry : new TreeMap<>(params).entrySet()) {
+            key.append('|').append(entry.getKey()).append('=');
+            if (entry.getValue() != null) {
+                key.append(entry.getValue().trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * One attempt. Reference data lookups are idempotent and cheap, so they are hedged:
+     * when the call has not answered after the operation's p95 latency a second copy is
+     * sent (if the circuit is closed and the concurrency limit has room) and the first
+     * answer wins. The other copy is cancelled.
+     */
+    private <T> T runAttempt(String operation, AmadeusScheduler.Family family, AmadeusScheduler.Priority priority,
+                             CircuitBreaker breaker, Callable<T> action, long deadlineNanos) throws ResponseException, TimeoutException {
+        LatencyWindow window = latencies.computeIfAbsent(operation, op -> new LatencyWindow());
+        Callable<T> copy = () -> {
+            long start = System.nanoTime();
+            T result = runWithTimeout(family, priority, breaker, action, deadlineNanos);
+            window.record(System.nanoTime() - start);
+            return result;
+        };
+        long hedgeAfter = family == AmadeusScheduler.Family.REFERENCE_DATA ? window.p95Nanos() : 0;
+        if (hedgeAfter <= 0) {
             try {
-                Thread.sleep(delayMillis);
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Interrupted", ie);
+                return copy.call();
+            } catch (ResponseException | TimeoutException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        CompletionService<T> race = new ExecutorCompletionService<>(coalescer);
+        List<Future<T>> copies = new ArrayList<>();
+        copies.add(race.submit(copy));
+        try {
+            Future<T> done = race.poll(hedgeAfter, TimeUnit.NANOSECONDS);
+            if (done == null && breaker.state() == CircuitBreaker.State.CLOSED && limiter.inFlight() < limiter.limit()) {
+                logger.debug("{} slower than its p95 of {}ms, sending a hedged request",
+                        operation, TimeUnit.NANOSECONDS.toMillis(hedgeAfter));
+                copies.add(race.submit(copy));
+            }
+            Throwable failure = null;
+            for (int pending = copies.size(); pending > 0; pending--) {
+                // every copy ends within its own timeout, so this does not wait forever
+                if (done == null) {
+                    done = race.take();
+                }
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    failure = e.getCause() != null ? e.getCause() : e;
+                }
+                done = null;
+            }
+            if (failure instanceof ResponseException re) throw re;
+            if (failure instanceof TimeoutException te) throw te;
+            if (failure instanceof RuntimeException re) throw re;
+            throw new RuntimeException(failure);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted", e);
+        } finally {
+            for (Future<T> future : copies) {
+                future.cancel(true);
             }
-            delayMillis = Math.min(delayMillis * 2, 2000);
         }
     }
 
-    // Run the task with a timeout
-    private <T> T runWithTimeout(Callable<T> task, Duration timeout) throws TimeoutException, ResponseException {
-        Future<T> future = executor.submit(task);
+    // Run the task until deadline (nanoTime). Every call that passed the circuit breaker reports back to it.
+    private <T> T runWithTimeout(AmadeusScheduler.Family family, AmadeusScheduler.Priority priority, CircuitBreaker breaker,
+                                 Callable<T> task, long deadline) throws TimeoutException, ResponseException {
+        if (!breaker.allowRequest()) {
+            throw new CircuitOpenException(breaker.name(), breaker.remainingOpen());
+        }
+        AdaptiveLimiter.Permit permit;
         try {
-            return future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            // waiting for a rate limit token and for a free slot both count against the timeout
+            scheduler.acquire(family, priority, deadline);
+            permit = limiter.acquire(deadline);
         } catch (TimeoutException e) {
+            // never sent, says nothing about the upstream
+            breaker.onIgnored();
+            throw e;
+        } catch (InterruptedException e) {
+            breaker.onIgnored();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted", e);
+        }
+
+        // the slot is given back when the SDK call really ends, a call we stopped waiting for counts as dropped
+        AtomicBoolean claimed = new AtomicBoolean();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        Future<T> future = executor.submit(() -> {
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+            AdaptiveLimiter.Outcome outcome = AdaptiveLimiter.Outcome.IGNORED;
+            try {
+                T result = task.call();
+                outcome = AdaptiveLimiter.Outcome.SUCCESS;
+                return result;
+            } catch (ResponseException e) {
+                outcome = isOverloaded(e) ? AdaptiveLimiter.Outcome.DROPPED : AdaptiveLimiter.Outcome.IGNORED;
+                throw e;
+            } catch (Exception e) {
+                if (!Thread.currentThread().isInterrupted()) {
+                    outcome = AdaptiveLimiter.Outcome.DROPPED;
+                }
+                throw e;
+            } finally {
+                permit.complete(timedOut.get() ? AdaptiveLimiter.Outcome.DROPPED : outcome);
+            }
+        });
+        try {
+            T result = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            breaker.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            breaker.onFailure();
+            timedOut.set(true);
             future.cancel(true);
+            if (claimed.compareAndSet(false, true)) {
+                permit.complete(AdaptiveLimiter.Outcome.DROPPED);
+            }
             throw e;
         } catch (ExecutionException e) {
             Throwable cause = e.getCause() != null ? e.getCause() : e;
             if (cause instanceof ResponseException re) {
+                if (isOverloaded(re)) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
                 throw re;
             }
+            breaker.onFailure();
             if (cause instanceof RuntimeException re) {
                 throw re;
             }
             throw new RuntimeException(cause);
         } catch (InterruptedException e) {
+            // caller gave up (e.g. a losing fallback search or hedge), stop the SDK call too
+            breaker.onIgnored();
+            future.cancel(true);
+            if (claimed.compareAndSet(false, true)) {
+                permit.complete(AdaptiveLimiter.Outcome.IGNORED);
+            }
             Thread.currentThread().interrupt();
             throw new RuntimeException("Interrupted", e);
         }
     }
 
+    // 429, 5xx and network errors mean Amadeus is struggling, other 4xx are about the request itself
+    private static boolean isOverloaded(ResponseException e) {
+        String code = e.getCode();
+        return code == null || "429".equals(code) || !code.startsWith("4");
+    }
+
     // Get the nearest airport from coordinates
     public String getNearestAirport(double lat, double lng) throws ResponseException, TimeoutException {
+        return nearestAirport("Nearest airport", lat, lng, 100);
+    }
+
+    /*
+     * Nearest airport within radiusKm, the bundled index being partial. An indexed hit only
+     * answers alone within LOCAL_AIRPORT_TRUSTED_KM; further away Amadeus is asked within the
+     * hit's distance, since only it knows about closer airports missing from the index. The
+     * index prefers a large airport over a closer regional one (LHR over LCY), on purpose:
+     * the result is used to search flights. If Amadeus fails, the indexed hit still answers.
+     */
+    private String nearestAirport(String operation, double lat, double lng, int radiusKm)
+            throws ResponseException, TimeoutException {
+        AirportIndex.Airport local = airportIndex.nearest(lat, lng, radiusKm);
+        if (local != null && local.distanceKm() <= LOCAL_AIRPORT_TRUSTED_KM) {
+            return local.iata();
+        }
+
         String latStr = String.format(Locale.US, "%.6f", lat);
         String lngStr = String.format(Locale.US, "%.6f", lng);
+        int searchKm = local != null ? (int) Math.max(1, Math.ceil(local.distanceKm())) : radiusKm;
 
-        logger.debug("NearestAirport: lat={} lng={}", latStr, lngStr);
+        logger.debug("{}: lat={} lng={} radius={}", operation, latStr, lngStr, searchKm);
 
         Params params = Params.with("latitude", latStr)
                 .and("longitude", lngStr)
-                .and("radius", 100)
+                .and("radius", searchKm)
                 .and("page[limit]", 1);
 
-        Location[] locations = executeWithRetry("Nearest airport", () ->
-                amadeus.referenceData.locations.airports.get(params));
-        if (locations != null && locations.length > 0) {
+        Location[] locations;
+        try {
+            locations = executeShared(operation, AmadeusScheduler.Family.REFERENCE_DATA, params, () ->
+                    amadeus.referenceData.locations.airports.get(params));
+        } catch (ResponseException | TimeoutException e) {
+            if (local == null) {
+                throw e;
+            }
+            logger.warn("{} lookup failed, using the local index: {}", operation, e.getMessage());
+            return local.iata();
+        }
+        if (locations != null && locations.length > 0 && locations[0].getIataCode() != null) {
             return locations[0].getIataCode();
-        } else {
-            return null;
         }
+        return local != null ? local.iata() : null;
     }
 
     // Get list of airports nearby
     public List<String> getNearbyAirports(double lat, double lng, int radiusKm, int limit) throws ResponseException, TimeoutException {
+        List<String> local = new ArrayList<>();
+        for (AirportIndex.Airport airport : airportIndex.nearest(lat, lng, radiusKm, limit)) {
+            local.add(airport.iata());
+        }
+        // the bundled index is sparse, only a full answer saves the Amadeus call
+        if (local.size() >= limit) {
+            return local;
+        }
+
         List<String> airportCodes = new ArrayList<>();
         String latStr = String.format(Locale.US, "%.6f", lat);
         String lngStr = String.format(Locale.US, "%.6f", lng);
@@ -115,8 +522,17 @@ public class AmadeusService {
                 .and("radius", radiusKm)
                 .and("page[limit]", limit);
 
-        Location[] results = executeWithRetry("Nearby airports", () ->
-                amadeus.referenceData.locations.airports.get(params));
+        Location[] results;
+        try {
+            results = executeShared("Nearby airports", AmadeusScheduler.Family.REFERENCE_DATA, params, () ->
+                    amadeus.referenceData.locations.airports.get(params));
+        } catch (ResponseException | TimeoutException e) {
+            if (local.isEmpty()) {
+                throw e;
+            }
+            logger.warn("Nearby airports lookup failed, using the local index only: {}", e.getMessage());
+            return local;
+        }
         if (results != null) {
             for (Location loc : results) {
                 if (loc.getIataCode() != null) {
@@ -124,11 +540,34 @@ public class AmadeusService {
                 }
             }
         }
+        // Amadeus first, then indexed airports it did not return
+        for (String code : local) {
+            if (airportCodes.size() >= limit) {
+                break;
+            }
+            if (!airportCodes.contains(code)) {
+                airportCodes.add(code);
+            }
+        }
         return airportCodes;
     }
 
     // Get details of nearby airports
     public List<Map<String, Object>> getNearbyAirportDetails(double lat, double lng, int radiusKm, int limit) throws ResponseException, TimeoutException {
+        List<Map<String, Object>> local = new ArrayList<>();
+        for (AirportIndex.Airport airport : airportIndex.nearest(lat, lng, radiusKm, limit)) {
+            Map<String, Object> info = new HashMap<>();
+            info.put("iata", airport.iata());
+            info.put("lat", airport.lat());
+            info.put("lng", airport.lng());
+            info.put("name", airport.name());
+            local.add(info);
+        }
+        // the bundled index is sparse, only a full answer saves the Amadeus call
+        if (local.size() >= limit) {
+            return local;
+        }
+
         List<Map<String, Object>> airports = new ArrayList<>();
         String latStr = String.format(Locale.US, "%.6f", lat);
         String lngStr = String.format(Locale.US, "%.6f", lng);
@@ -138,8 +577,18 @@ public class AmadeusService {
                 .and("radius", radiusKm)
                 .and("page[limit]", limit);
 
-        Location[] results = executeWithRetry("Nearby airport details", () ->
-                amadeus.referenceData.locations.airports.get(params));
+        Location[] results;
+        try {
+            results = executeShared("Nearby airport details", AmadeusScheduler.Family.REFERENCE_DATA, params, () ->
+                    amadeus.referenceData.locations.airports.get(params));
+        } catch (ResponseException | TimeoutException e) {
+            if (local.isEmpty()) {
+                throw e;
+            }
+            logger.warn("Nearby airport details lookup failed, using the local index only: {}", e.getMessage());
+            return local;
+        }
+        Set<Object> codes = new HashSet<>();
         if (results != null) {
             for (Location loc : results) {
                 if (loc.getIataCode() != null && loc.getGeoCode() != null) {
@@ -151,14 +600,24 @@ public class AmadeusService {
                         info.put("name", loc.getName());
                     }
                     airports.add(info);
+                    codes.add(loc.getIataCode());
                 }
             }
         }
+        // Amadeus first, then indexed airports it did not return
+        for (Map<String, Object> info : local) {
+            if (airports.size() >= limit) {
+                break;
+            }
+            if (codes.add(info.get("iata"))) {
+                airports.add(info);
+            }
+        }
         return airports;
     }
 
-    //Search for flight offers
-    public String getFlightOffers(String origin, String destination, String departureDate, String returnDate, int adults) throws ResponseException, TimeoutException {
+    // Search for flight offers, mapped straight to the simplified form the frontend uses
+    public List<FlightSummary> getFlightOffers(String origin, String destination, String departureDate, String returnDate, int adults) throws ResponseException, TimeoutException {
         Params params = Params.with("originLocationCode", origin)
                 .and("destinationLocationCode", destination)
                 .and("departureDate", departureDate)
@@ -166,20 +625,19 @@ public class AmadeusService {
         if (returnDate != null && !returnDate.isEmpty()) {
             params.and("returnDate", returnDate);
         }
-        var response = executeWithRetry("Flight offers", () ->
+        var response = executeShared("Flight offers", AmadeusScheduler.Family.FLIGHT_SHOPPING, params, () ->
                 amadeus.shopping.flightOffersSearch.get(params));
-        return gson.toJson(response);
+        return FlightSummary.fromOffers(response);
     }
 
     //Find hotels by position
     public String getHotelsByGeocode(double lat, double lng, int radiusKm) throws ResponseException, TimeoutException {
-        var response = executeWithRetry("Hotels by geocode", () ->
-                amadeus.referenceData.locations.hotels.byGeocode.get(
-                        Params.with("latitude", lat)
-                                .and("longitude", lng)
-                                .and("radius", radiusKm)
-                                .and("radiusUnit", "KM")
-                ));
+        Params params = Params.with("latitude", lat)
+                .and("longitude", lng)
+                .and("radius", radiusKm)
+                .and("radiusUnit", "KM");
+        var response = executeShared("Hotels by geocode", AmadeusScheduler.Family.REFERENCE_DATA, params, () ->
+                amadeus.referenceData.locations.hotels.byGeocode.get(params));
         return gson.toJson(response);
     }
 
@@ -192,42 +650,200 @@ public class AmadeusService {
         if (checkOutDate != null && !checkOutDate.isBlank()) {
             params.and("checkOutDate", checkOutDate);
         }
-        var response = executeWithRetry("Hotel offers", () ->
+        var response = executeShared("Hotel offers", AmadeusScheduler.Family.HOTEL_SHOPPING, params, () ->
                 amadeus.shopping.hotelOffersSearch.get(params));
         return gson.toJson(response);
     }
 
+    /**
+     * Offers for many hotels with few upstream calls: the ids go out as comma separated
+     * hotelIds chunks, at most HOTEL_OFFER_CHUNK_CONCURRENCY chunks at a time. Returns
+     * hotelId -> offers array (same shape getHotelOffers gives for one hotel) in the order
+     * of hotelIds, only for hotels that have an offer. Once `wanted` hotels have one, no
+     * further chunks are started and the running ones are cancelled.
+     */
+    public Map<String, JsonArray> getHotelOffersBatched(List<String> hotelIds, int adults, String checkInDate,
+                                                        int roomQuantity, String checkOutDate, int wanted) throws ResponseException, TimeoutException {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(hotelIds));
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += HOTEL_OFFER_CHUNK_SIZE) {
+            chunks.add(ids.subList(i, Math.min(ids.size(), i + HOTEL_OFFER_CHUNK_SIZE)));
+        }
+
+        // chunk tasks run on other threads, they keep the caller's deadline
+        Deadline deadline = Deadline.currentOr(SHARED_CALL_TIMEOUT);
+        Map<String, JsonArray> found = new HashMap<>();
+        CompletionService<Map<String, JsonArray>> completion = new ExecutorCompletionService<>(coalescer);
+        List<Future<Map<String, JsonArray>>> running = new ArrayList<>();
+        Exception failure = null;
+        int next = 0;
+        int pending = 0;
+        try {
+            while (found.size() < wanted && (next < chunks.size() || pending > 0)) {
+                while (pending < HOTEL_OFFER_CHUNK_CONCURRENCY && next < chunks.size()) {
+                    List<String> chunk = chunks.get(next++);
+                    running.add(completion.submit(deadline.wrap(() ->
+                            fetchOfferChunk(chunk, adults, checkInDate, roomQuantity, checkOutDate))));
+                    pending++;
+                }
+                Future<Map<String, JsonArray>> done = completion.take();
+                pending--;
+                try {
+                    found.putAll(done.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    logger.warn("Hotel offers chunk failed: {}", cause.getMessage());
+                    if (failure == null) {
+                        failure = cause instanceof Exception ex ? ex : new RuntimeException(cause);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted", e);
+        } finally {
+            // leaving the shared calls cancels the upstream requests nobody else waits for
+            for (Future<Map<String, JsonArray>> future : running) {
+                future.cancel(true);
+            }
+        }
+
+        // every chunk failed: surface the error (e.g. a 429) instead of "no offers"
+        if (found.isEmpty() && failure != null) {
+            if (failure instanceof ResponseException re) throw re;
+            if (failure instanceof TimeoutException te) throw te;
+            if (failure instanceof RuntimeException re) throw re;
+            throw new RuntimeException(failure);
+        }
+
+        Map<String, JsonArray> result = new LinkedHashMap<>();
+        for (String id : ids) {
+            JsonArray offers = found.get(id);
+            if (offers != null) {
+                result.put(id, offers);
+            }
+        }
+        return result;
+    }
+
+    // One hotelIds call for the chunk, split per hotel. A 400 for the whole chunk is
+    // usually one bad id, so the chunk is then retried hotel by hotel.
+    private Map<String, JsonArray> fetchOfferChunk(List<String> chunk, int adults, String checkInDate,
+                                                   int roomQuantity, String checkOutDate) throws ResponseException, TimeoutException {
+        Map<String, JsonArray> byHotel = new HashMap<>();
+        try {
+            String json = getHotelOffers(String.join(",", chunk), adults, checkInDate, roomQuantity, checkOutDate);
+            JsonElement root = JsonParser.parseString(json);
+            if (!root.isJsonArray()) {
+                return byHotel;
+            }
+            for (JsonElement element : root.getAsJsonArray()) {
+                String hotelId = offerHotelId(element);
+                if (hotelId == null) {
+                    continue;
+                }
+                byHotel.computeIfAbsent(hotelId, id -> new JsonArray()).add(element);
+            }
+            return byHotel;
+        } catch (ResponseException e) {
+            if (!"400".equals(e.getCode()) || chunk.size() == 1) {
+                throw e;
+            }
+            logger.info("Hotel offers chunk of {} rejected, retrying per hotel: {}", chunk.size(), e.getMessage());
+        }
+        for (String hotelId : chunk) {
+            try {
+                byHotel.putAll(fetchOfferChunk(List.of(hotelId), adults, checkInDate, roomQuantity, checkOutDate));
+            } catch (ResponseException e) {
+                if (!"400".equals(e.getCode())) {
+                    throw e;
+                }
+                logger.info("Skipping hotel {} due to upstream bad request: {}", hotelId, e.getMessage());
+            }
+        }
+        return byHotel;
+    }
+
+    // hotel.hotelId of one offer search result, null if it has no offers
+    private static String offerHotelId(JsonElement element) {
+        if (!element.isJsonObject()) {
+            return null;
+        }
+        JsonObject offer = element.getAsJsonObject();
+        JsonArray offers = offer.getAsJsonArray("offers");
+        JsonObject hotel = offer.getAsJsonObject("hotel");
+        if (offers == null || offers.size() == 0 || hotel == null || !hotel.has("hotelId")) {
+            return null;
+        }
+        return hotel.get("hotelId").getAsString();
+    }
+
     // Get lat and long from city name
     public double[] geocodeCityToCoords(String cityName) {
+        // airport codes (the mashups geocode the airports they just found) never leave the process
+        if (cityName != null && cityName.trim().length() == 3) {
+            AirportIndex.Airport airport = airportIndex.find(cityName);
+            if (airport != null) {
+                return new double[]{airport.lat(), airport.lng()};
+            }
+        }
+        return geocodeCache.geocodeBlocking(GeocodeCache.Source.AMADEUS, cityName, this::lookupCoords);
+    }
+
+    // Amadeus geocoding behind the cache: null is "no match", a failed call throws
+    private double[] lookupCoords(String cityName) {
         try {
             Params params = Params.with("keyword", cityName)
                     .and("subType", "CITY,AIRPORT")
                     .and("page[limit]", 1);
-            Location[] results = executeWithRetry("Geocoding city", () ->
+            Location[] results = executeShared("Geocoding city", AmadeusScheduler.Family.REFERENCE_DATA, params, () ->
                     amadeus.referenceData.locations.get(params));
 
             if (results != null && results.length > 0 && results[0].getGeoCode() != null) {
                 Location.GeoCode geo = results[0].getGeoCode();
                 logger.info("Geocoded {} to: {} , {}", cityName, geo.getLatitude(), geo.getLongitude());
                 return new double[]{geo.getLatitude(), geo.getLongitude()};
-            } else {
-                logger.warn("No geocode result for: {}", cityName);
             }
-        } catch (Exception e) {
-            logger.error("Failed to geocode city: {}", cityName, e);
-            e.printStackTrace();
+            logger.warn("No geocode result for: {}", cityName);
+            return null;
+        } catch (ResponseException | TimeoutException e) {
+            throw new CompletionException(e);
         }
-        return null;
     }
 
     // Search for locations by keyword
+    /**
+     * Autocomplete for cities and airports. The local index answers when it fills the page or
+     * has an exact match; otherwise Amadeus is asked once per keyword and its answers are
+     * added to the index, so the next keystrokes with the same prefix stay local.
+     */
     public List<Map<String, Object>> searchLocations(String keyword) throws ResponseException, TimeoutException {
-        List<Map<String, Object>> suggestions = new ArrayList<>();
+        List<LocationAutocomplete.Suggestion> local = autocomplete.search(keyword, LOCATION_RESULTS);
+        String normalized = LocationAutocomplete.normalize(keyword).trim();
+        if (local.size() >= LOCATION_RESULTS
+                || local.stream().anyMatch(LocationAutocomplete.Suggestion::exact)
+                || searchedKeywords.get(normalized) != null) {
+            return toLocationMaps(local);
+        }
+
         Params params = Params.with("keyword", keyword)
                 .and("subType", "AIRPORT,CITY")
-                .and("page[limit]", 5);
-        Location[] results = executeWithRetry("Search locations", () ->
-                amadeus.referenceData.locations.get(params));
+                .and("page[limit]", LOCATION_RESULTS);
+        Location[] results;
+        try {
+            results = executeShared("Search locations", AmadeusScheduler.Family.REFERENCE_DATA, params, () ->
+                    amadeus.referenceData.locations.get(params));
+        } catch (ResponseException | TimeoutException e) {
+            if (local.isEmpty()) {
+                throw e;
+            }
+            logger.warn("Location search for '{}' failed, answering from the local index: {}", keyword, e.getMessage());
+            return toLocationMaps(local);
+        }
+        searchedKeywords.put(normalized, Boolean.TRUE);
+
+        List<Map<String, Object>> suggestions = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
         if (results != null) {
             for (Location loc : results) {
                 Map<String, Object> info = new HashMap<>();
@@ -236,17 +852,52 @@ public class AmadeusService {
                 }
                 if (loc.getIataCode() != null) {
                     info.put("iataCode", loc.getIataCode());
+                    seen.add(loc.getIataCode());
                 }
+                Double lat = null;
+                Double lng = null;
                 if (loc.getGeoCode() != null) {
-                    info.put("lat", loc.getGeoCode().getLatitude());
-                    info.put("lng", loc.getGeoCode().getLongitude());
+                    lat = loc.getGeoCode().getLatitude();
+                    lng = loc.getGeoCode().getLongitude();
+                    info.put("lat", lat);
+                    info.put("lng", lng);
                 }
                 suggestions.add(info);
+                autocomplete.learn("CITY".equalsIgnoreCase(loc.getSubType())
+                                ? LocationAutocomplete.Kind.CITY
+                                : LocationAutocomplete.Kind.AIRPORT,
+                        loc.getName(), loc.getIataCode(),
+                        loc.getAddress() != null ? loc.getAddress().getCityName() : null, lat, lng);
+            }
+        }
+        // fill the page with the local matches Amadeus did not return
+        for (Map<String, Object> info : toLocationMaps(local)) {
+            Object code = info.get("iataCode");
+            if (suggestions.size() < LOCATION_RESULTS && (code == null || seen.add(code.toString()))) {
+                suggestions.add(info);
             }
         }
         return suggestions;
     }
 
+    // Same shape as the Amadeus answer: name, iataCode, lat, lng
+    private static List<Map<String, Object>> toLocationMaps(List<LocationAutocomplete.Suggestion> suggestions) {
+        List<Map<String, Object>> maps = new ArrayList<>(suggestions.size());
+        for (LocationAutocomplete.Suggestion suggestion : suggestions) {
+            Map<String, Object> info = new HashMap<>();
+            info.put("name", suggestion.name());
+            if (suggestion.iataCode() != null) {
+                info.put("iataCode", suggestion.iataCode());
+            }
+            if (suggestion.lat() != null && suggestion.lng() != null) {
+                info.put("lat", suggestion.lat());
+                info.put("lng", suggestion.lng());
+            }
+            maps.add(info);
+        }
+        return maps;
+    }
+
     // Find nearest airport with increasing radius
     public String findNearestAirportCode(double lat, double lng) {
         return findNearestAirportCode(lat, lng, 200);
@@ -254,23 +905,12 @@ public class AmadeusService {
 
     public String findNearestAirportCode(double lat, double lng, int initialRadiusKm) {
         try {
-            String latStr = String.format(Locale.US, "%.6f", lat);
-            String lngStr = String.format(Locale.US, "%.6f", lng);
-
             int radius = initialRadiusKm;
             final int maxRadius = 1000;
             while (radius <= maxRadius) {
-                logger.debug("Find airport with lat={}, lng={}, radius={}", latStr, lngStr, radius);
-                Params params = Params.with("latitude", latStr)
-                        .and("longitude", lngStr)
-                        .and("radius", radius)
-                        .and("page[limit]", 1);
-
-                Location[] locations = executeWithRetry("Find nearest airport", () ->
-                        amadeus.referenceData.locations.airports.get(params));
-                logger.debug("Locations result for radius {}: {}", radius, Arrays.toString(locations));
-                if (locations != null && locations.length > 0) {
-                    return locations[0].getIataCode();
+                String code = nearestAirport("Find nearest airport", lat, lng, radius);
+                if (code != null) {
+                    return code;
                 }
                 radius *= 2;
             }
@@ -279,16 +919,16 @@ public class AmadeusService {
         }
         return null;
     }
-    public Map<String, String> getAirlineNames(List<String> codes) throws ResponseException {
+    public Map<String, String> getAirlineNames(List<String> codes) throws ResponseException, TimeoutException {
         Map<String, String> result = new HashMap<>();
         if (codes == null || codes.isEmpty()) {
             return result;
         }
 
         String joinedCodes = String.join(",", new LinkedHashSet<>(codes));
-        var airlines = amadeus.referenceData.airlines.get(
-                Params.with("airlineCodes", joinedCodes)
-        );
+        Params params = Params.with("airlineCodes", joinedCodes);
+        var airlines = executeShared("Airline names", AmadeusScheduler.Family.REFERENCE_DATA, params, () ->
+                amadeus.referenceData.airlines.get(params));
         if (airlines != null) {
             for (var airline : airlines) {
                 String code = airline.getIataCode();
@@ -304,4 +944,69 @@ public class AmadeusService {
         return result;
     }
 
-}
\ No newline at end of file
+    // Latencies of the last LATENCY_SAMPLES successful calls of one operation
+    private static final class LatencyWindow {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private int count;
+        private int next;
+
+        void record(long nanos) {
+            lock.lock();
+            try {
+                samples[next] = nanos;
+                next = (next + 1) % samples.length;
+                count = Math.min(count + 1, samples.length);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // 0 while there are too few samples
+        long p95Nanos() {
+            long[] sorted;
+            lock.lock();
+            try {
+                if (count < HEDGE_MIN_SAMPLES) {
+                    return 0;
+                }
+                sorted = Arrays.copyOf(samples, count);
+            } finally {
+                lock.unlock();
+            }
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+        }
+    }
+
+    // State of one executeWithRetry run, shared by its attempts
+    private static final class Retry<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final String operation;
+        private final AmadeusScheduler.Family family;
+        private final AmadeusScheduler.Priority priority;
+        private final Deadline deadline;
+        private final CircuitBreaker breaker;
+        private final Callable<T> action;
+        private final Metrics.Upstream metrics;
+        private volatile Future<?> running;
+
+        Retry(String operation, AmadeusScheduler.Family family, AmadeusScheduler.Priority priority,
+              Deadline deadline, CircuitBreaker breaker, Callable<T> action) {
+            this.operation = operation;
+            this.family = family;
+            this.priority = priority;
+            this.deadline = deadline;
+            this.breaker = breaker;
+            this.action = action;
+            this.metrics = Metrics.upstream("amadeus", operation);
+        }
+    }
+
+    private static final class SharedCall {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile Future<?> worker;
+    }
+}
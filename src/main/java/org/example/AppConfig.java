@@ -6,12 +6,29 @@ import java.time.Duration;
 import java.util.Optional;
 
 public class AppConfig {
+    public static final String DEFAULT_AMADEUS_BASE_URL = "https://test.api.amadeus.com";
+    public static final String DEFAULT_GOOGLE_MAPS_BASE_URL = "https://maps.googleapis.com/maps/api/";
+
     private final String amadeusApiKey;
     private final String amadeusApiSecret;
     private final String googleMapsApiKey;
     private final Duration cacheTtl;
     private final int maxHotelResults;
     private final double searchRadiusKm;
+    private final String airportsFile;
+    private final boolean amadeusVirtualThreads;
+    private final int amadeusMaxConcurrency;
+    private final int hotelCacheMaxHotels;
+    private final Duration googleConnectTimeout;
+    private final Duration googleRequestTimeout;
+    private final double amadeusRateLimit;
+    private final int routeCachePrecision;
+    private final int routeCacheMaxRoutes;
+    private final Duration routeCacheTtl;
+    private final String diskCacheDir;
+    private final long diskCacheMaxBytes;
+    private final String amadeusBaseUrl;
+    private final String googleMapsBaseUrl;
 
     // Load vars from .env file
     public AppConfig(Dotenv dotenv) {
@@ -21,6 +38,21 @@ public class AppConfig {
         this.cacheTtl = Duration.ofMinutes(10);
         this.maxHotelResults = Integer.parseInt(dotenv.get("MAX_HOTEL_RESULTS", "25"));
         this.searchRadiusKm = Double.parseDouble(dotenv.get("HOTEL_RADIUS_KM", "15"));
+        this.airportsFile = dotenv.get("AIRPORTS_FILE", "");
+        this.amadeusVirtualThreads = !"platform".equalsIgnoreCase(dotenv.get("AMADEUS_THREADS", "virtual"));
+        this.amadeusMaxConcurrency = Integer.parseInt(dotenv.get("AMADEUS_MAX_CONCURRENCY", "16"));
+        this.hotelCacheMaxHotels = Integer.parseInt(dotenv.get("HOTEL_CACHE_MAX_HOTELS", "5000"));
+        this.googleConnectTimeout = Duration.ofMillis(Long.parseLong(dotenv.get("GOOGLE_CONNECT_TIMEOUT_MS", "3000")));
+        this.googleRequestTimeout = Duration.ofMillis(Long.parseLong(dotenv.get("GOOGLE_REQUEST_TIMEOUT_MS", "8000")));
+        this.amadeusRateLimit = Double.parseDouble(dotenv.get("AMADEUS_RATE_LIMIT", "9"));
+        this.routeCachePrecision = Integer.parseInt(dotenv.get("ROUTE_CACHE_PRECISION", "3"));
+        this.routeCacheMaxRoutes = Integer.parseInt(dotenv.get("ROUTE_CACHE_MAX_ROUTES", "5000"));
+        this.routeCacheTtl = Duration.ofMinutes(Long.parseLong(dotenv.get("ROUTE_CACHE_TTL_MINUTES", "360")));
+        this.diskCacheDir = dotenv.get("DISK_CACHE_DIR", "cache");
+        this.diskCacheMaxBytes = Long.parseLong(dotenv.get("DISK_CACHE_MAX_MB", "256")) * 1024 * 1024;
+        this.amadeusBaseUrl = stripTrailingSlash(dotenv.get("AMADEUS_BASE_URL", DEFAULT_AMADEUS_BASE_URL));
+        String mapsBase = dotenv.get("GOOGLE_MAPS_BASE_URL", DEFAULT_GOOGLE_MAPS_BASE_URL).trim();
+        this.googleMapsBaseUrl = mapsBase.endsWith("/") ? mapsBase : mapsBase + "/";
     }
 
     public Optional<String> googleMapsApiKey() {
@@ -54,4 +86,70 @@ public class AppConfig {
     public double searchRadiusKm() {
         return searchRadiusKm;
     }
-}
\ No newline at end of file
+
+    public String airportsFile() {
+        return airportsFile;
+    }
+
+    public boolean amadeusVirtualThreads() {
+        return amadeusVirtualThreads;
+    }
+
+    public int amadeusMaxConcurrency() {
+        return amadeusMaxConcurrency;
+    }
+
+    public int hotelCacheMaxHotels() {
+        return hotelCacheMaxHotels;
+    }
+
+    public Duration googleConnectTimeout() {
+        return googleConnectTimeout;
+    }
+
+    public Duration googleRequestTimeout() {
+        return googleRequestTimeout;
+    }
+
+    // Amadeus requests per second for the whole app
+    public double amadeusRateLimit() {
+        return amadeusRateLimit;
+    }
+
+    // Decimals kept of route coordinates in the route cache key, 3 is about 100 m
+    public int routeCachePrecision() {
+        return routeCachePrecision;
+    }
+
+    public int routeCacheMaxRoutes() {
+        return routeCacheMaxRoutes;
+    }
+
+    public Duration routeCacheTtl() {
+        return routeCacheTtl;
+    }
+
+    // Directory of the disk cache tier, blank turns it off
+    public String diskCacheDir() {
+        return diskCacheDir;
+    }
+
+    public long diskCacheMaxBytes() {
+        return diskCacheMaxBytes;
+    }
+
+    // Scheme, host and port of the Amadeus API, e.g. a local stub server in load tests
+    public String amadeusBaseUrl() {
+        return amadeusBaseUrl;
+    }
+
+    // Prefix of every Google Maps web service path, always ends with a slash
+    public String googleMapsBaseUrl() {
+        return googleMapsBaseUrl;
+    }
+
+    private static String stripTrailingSlash(String url) {
+        String trimmed = url.trim();
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+}
@@ -0,0 +1,155 @@
+package org.example;
+
+import io.javalin.http.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * POST /batch: several GET endpoints answered in one round trip. The sub-requests run
+ * concurrently under the deadline of the batch, each on its own virtual thread. Sub-requests
+ * with the same path and parameters run once and share their answer; identical Amadeus
+ * calls of different ones still coalesce in AmadeusService while they overlap. A sub-request
+ * still running at the deadline answers 504 and ends on its own deadline.
+ *
+ * Request:  {"requests": [{"id": "origin", "path": "/nearby-airports", "params": {"lat": 48.2, "lng": 16.37}}]}
+ * Response: {"responses": [{"id": "origin", "status": 200, "body": [...]}]}, in request order
+ */
+public class Batch {
+    private static final Logger logger = LoggerFactory.getLogger(Batch.class);
+    private static final int MAX_REQUESTS = 20;
+    // budget when called outside a request, the /batch route passes its own deadline
+    private static final Duration BATCH_BUDGET = Duration.ofSeconds(20);
+
+    /**
+     * One endpoint that can take part in a batch. Blocking endpoints simply block, they run
+     * on a thread of their own; asynchronous ones return a future that is not done yet.
+     */
+    public interface Operation {
+        CompletableFuture<Reply> run(Function<String, String> param) throws Exception;
+    }
+
+    public record SubRequest(String id, String path, Map<String, Object> params) {
+    }
+
+    public record Body(List<SubRequest> requests) {
+    }
+
+    private record SubResponse(String id, int status, Object body) {
+    }
+
+    // path -> endpoint, e.g. "/nearby-airports"
+    private final Map<String, Operation> operations;
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("batch-", 0).factory());
+
+    public Batch(Map<String, Operation> operations) {
+        this.operations = Map.copyOf(operations);
+    }
+
+    public void handle(Context ctx) {
+        List<SubRequest> requests;
+        try {
+            Body body = ctx.bodyAsClass(Body.class);
+            requests = body != null ? body.requests() : null;
+        } catch (Exception e) {
+            logger.debug("Unreadable batch body: {}", e.getMessage());
+            requests = null;
+        }
+        if (requests == null || requests.isEmpty() || requests.size() > MAX_REQUESTS) {
+            ctx.status(400).json(Map.of(
+                    "error", "Expected {\"requests\": [...]} with 1 to " + MAX_REQUESTS + " sub-requests"
+            ));
+            return;
+        }
+
+        Deadline deadline = Deadline.currentOr(BATCH_BUDGET);
+        // one run per distinct path and parameters, shared by every sub-request asking for it
+        Map<String, CompletableFuture<Reply>> runs = new HashMap<>();
+        List<CompletableFuture<Reply>> replies = new ArrayList<>(requests.size());
+        for (SubRequest request : requests) {
+            replies.add(runs.computeIfAbsent(key(request), k -> start(request, deadline)));
+        }
+        logger.debug("Batch of {} sub-requests runs {} distinct ones", requests.size(), runs.size());
+
+        List<SubResponse> responses = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            Reply reply = await(replies.get(i), deadline);
+            responses.add(new SubResponse(requests.get(i).id(), reply.status(), reply.body()));
+        }
+        ctx.json(Map.of("responses", responses));
+    }
+
+    private CompletableFuture<Reply> start(SubRequest request, Deadline deadline) {
+        Operation operation = request.path() != null ? operations.get(request.path()) : null;
+        if (operation == null) {
+            return CompletableFuture.completedFuture(new Reply(404, Map.of(
+                    "error", "Path cannot be batched",
+                    "paths", operations.keySet().stream().sorted().toList()
+            )));
+        }
+        Map<String, String> params = params(request);
+        // the deadline is a thread-local, so it is handed to the sub-request's thread
+        CompletableFuture<CompletableFuture<Reply>> started = CompletableFuture.supplyAsync(() -> {
+            try {
+                return deadline.call(() -> operation.run(params::get));
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        return started.thenCompose(Function.identity());
+    }
+
+    // Wait for one sub-request, but never past the batch deadline
+    private static Reply await(CompletableFuture<Reply> reply, Deadline deadline) {
+        try {
+            return reply.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return new Reply(504, Map.of("error", "Request timed out"));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause()
+                    : e.getCause();
+            logger.error("Batch sub-request failed", cause);
+            return new Reply(500, Map.of(
+                    "error", "Internal Server Error",
+                    "message", String.valueOf(cause.getMessage())
+            ));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Reply(503, Map.of("error", "Batch interrupted"));
+        }
+    }
+
+    // Query parameters as the GET endpoint would see them; numbers and booleans become text
+    private static Map<String, String> params(SubRequest request) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (request.params() != null) {
+            request.params().forEach((name, value) -> {
+                if (value != null) {
+                    params.put(name, value.toString());
+                }
+            });
+        }
+        return params;
+    }
+
+    private static String key(SubRequest request) {
+        return request.path() + "?" + new TreeMap<>(params(request));
+    }
+}
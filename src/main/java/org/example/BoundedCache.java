@@ -0,0 +1,206 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Size bounded in-memory cache with a TTL and segmented LRU eviction.
+ * New entries start in a probation segment and move to the protected segment on
+ * their second hit, so one burst of one-off keys cannot push out the hot ones.
+ * Entries are weighed (e.g. by number of hotels) and the total weight stays under maxWeight.
+ */
+public class BoundedCache<K, V> {
+    private static final double PROTECTED_SHARE = 0.8;
+    // one daemon thread sweeps expired entries for every cache
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final long maxWeight;
+    private final long protectedMaxWeight;
+    private final long ttlNanos;
+    private final ToIntFunction<V> weigher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // both maps are kept in LRU -> MRU order
+    private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Entry<V>> protectedSegment = new LinkedHashMap<>();
+    private long probationWeight;
+    private long protectedWeight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public BoundedCache(String name, long maxWeight, Duration ttl, ToIntFunction<V> weigher) {
+        this.name = name;
+        this.maxWeight = Math.max(1, maxWeight);
+        this.protectedMaxWeight = (long) (this.maxWeight * PROTECTED_SHARE);
+        this.ttlNanos = ttl.toNanos();
+        this.weigher = weigher;
+        long sweepMillis = Math.max(1000, ttl.toMillis() / 2);
+        SWEEPER.scheduleWithFixedDelay(this::removeExpired, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Every entry weighs 1
+    public BoundedCache(String name, long maxEntries, Duration ttl) {
+        this(name, maxEntries, ttl, value -> 1);
+    }
+
+    public V get(K key) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            Entry<V> entry = protectedSegment.get(key);
+            if (entry != null) {
+                if (entry.isExpired(now)) {
+                    removeExpiredEntry(key);
+                    misses.incrementAndGet();
+                    return null;
+                }
+                // move to the MRU end
+                protectedSegment.remove(key);
+                protectedSegment.put(key, entry);
+                hits.incrementAndGet();
+                return entry.value();
+            }
+
+            entry = probation.get(key);
+            if (entry == null || entry.isExpired(now)) {
+                if (entry != null) {
+                    removeExpiredEntry(key);
+                }
+                misses.incrementAndGet();
+                return null;
+            }
+            // second hit: promote, and demote the coldest protected entries if needed
+            probation.remove(key);
+            probationWeight -= entry.weight();
+            protectedSegment.put(key, entry);
+            protectedWeight += entry.weight();
+            while (protectedWeight > protectedMaxWeight && protectedSegment.size() > 1) {
+                Iterator<Map.Entry<K, Entry<V>>> coldest = protectedSegment.entrySet().iterator();
+                Map.Entry<K, Entry<V>> demoted = coldest.next();
+                coldest.remove();
+                protectedWeight -= demoted.getValue().weight();
+                probation.put(demoted.getKey(), demoted.getValue());
+                probationWeight += demoted.getValue().weight();
+            }
+            hits.incrementAndGet();
+            return entry.value();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(K key, V value) {
+        int weight = Math.max(1, weigher.applyAsInt(value));
+        if (weight > maxWeight) {
+            return;
+        }
+        Entry<V> entry = new Entry<>(value, weight, System.nanoTime() + ttlNanos);
+        lock.lock();
+        try {
+            remove(key);
+            probation.put(key, entry);
+            probationWeight += weight;
+            while (probationWeight + protectedWeight > maxWeight) {
+                LinkedHashMap<K, Entry<V>> victims = probation.isEmpty() ? protectedSegment : probation;
+                Iterator<Map.Entry<K, Entry<V>>> coldest = victims.entrySet().iterator();
+                Map.Entry<K, Entry<V>> evicted = coldest.next();
+                coldest.remove();
+                if (victims == probation) {
+                    probationWeight -= evicted.getValue().weight();
+                } else {
+                    protectedWeight -= evicted.getValue().weight();
+                }
+                evictions.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called by the sweeper so expired entries do not sit in memory until read
+    public void removeExpired() {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            probationWeight -= removeExpired(probation, now);
+            protectedWeight -= removeExpired(protectedSegment, now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats(name, hits.get(), misses.get(), evictions.get(), expirations.get(),
+                    probation.size() + protectedSegment.size(), probationWeight + protectedWeight, maxWeight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long removeExpired(LinkedHashMap<K, Entry<V>> segment, long now) {
+        long removedWeight = 0;
+        Iterator<Entry<V>> it = segment.values().iterator();
+        while (it.hasNext()) {
+            Entry<V> entry = it.next();
+            if (entry.isExpired(now)) {
+                it.remove();
+                removedWeight += entry.weight();
+                expirations.incrementAndGet();
+            }
+        }
+        return removedWeight;
+    }
+
+    private void removeExpiredEntry(K key) {
+        remove(key);
+        expirations.incrementAndGet();
+    }
+
+    private void remove(K key) {
+        Entry<V> old = probation.remove(key);
+        if (old != null) {
+            probationWeight -= old.weight();
+        }
+        old = protectedSegment.remove(key);
+        if (old != null) {
+            protectedWeight -= old.weight();
+        }
+    }
+
+    private record Entry<V>(V value, int weight, long expiresAtNanos) {
+        boolean isExpired(long now) {
+            return now - expiresAtNanos > 0;
+        }
+    }
+
+    public record Stats(String name, long hits, long misses, long evictions, long expirations,
+                        int entries, long weight, long maxWeight) {
+    }
+}
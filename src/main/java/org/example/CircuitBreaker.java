@@ -0,0 +1,129 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stops calling an upstream operation that keeps failing. After failureThreshold
+ * failures in a row the breaker opens and calls fail fast; after openDuration one
+ * probe call is let through (half-open) and its outcome closes or re-opens it.
+ * Client errors (bad input) are not failures, they say nothing about the upstream health.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openDuration.toNanos();
+    }
+
+    // Every allowed call must be followed by exactly one onSuccess, onFailure or onIgnored
+    public boolean allowRequest() {
+        lock.lock();
+        try {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                probeInFlight = false;
+                logger.info("Circuit for {} half-open, sending a probe", name);
+            }
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.HALF_OPEN && !probeInFlight) {
+                probeInFlight = true;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onSuccess() {
+        lock.lock();
+        try {
+            if (state != State.CLOSED) {
+                logger.info("Circuit for {} closed again", name);
+            }
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            probeInFlight = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onFailure() {
+        lock.lock();
+        try {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                logger.warn("Circuit for {} opened after {} failures in a row, failing fast for {}ms",
+                        name, consecutiveFailures, Duration.ofNanos(openNanos).toMillis());
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+                probeInFlight = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The call ended without telling anything about the upstream (cancelled, never sent)
+    public void onIgnored() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                probeInFlight = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Time until the open circuit lets a probe through, zero once it is half-open or closed
+    public Duration remainingOpen() {
+        lock.lock();
+        try {
+            if (state != State.OPEN) {
+                return Duration.ZERO;
+            }
+            return Duration.ofNanos(Math.max(0, openNanos - (System.nanoTime() - openedAt)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public State state() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
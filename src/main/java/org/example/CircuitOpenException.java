@@ -0,0 +1,27 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An Amadeus call refused by its open circuit breaker, without reaching the upstream.
+ * It is a TimeoutException so the existing throws clauses still cover it, but handlers
+ * answer it as 503 with Retry-After rather than as a timeout.
+ */
+public class CircuitOpenException extends TimeoutException {
+    private final Duration retryAfter;
+
+    public CircuitOpenException(String operation, Duration retryAfter) {
+        super("Circuit for " + operation + " is open, failing fast");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+
+    // Whole seconds for the Retry-After header, at least one
+    public long retryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
@@ -0,0 +1,78 @@
+package org.example;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget of one incoming request. The handlers create it, the services read it
+ * (current() on the request thread, wrap() for work handed to other threads), so
+ * every upstream call and retry is sized from what is left instead of a fixed timeout.
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    // System.nanoTime() based
+    private final long nanos;
+
+    private Deadline(long nanos) {
+        this.nanos = nanos;
+    }
+
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos());
+    }
+
+    // Deadline of the request this thread works for, or null outside a request
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    // Deadline of the current request, or fallback from now for background work
+    public static Deadline currentOr(Duration fallback) {
+        Deadline current = CURRENT.get();
+        return current != null ? current : after(fallback);
+    }
+
+    public long nanos() {
+        return nanos;
+    }
+
+    public long remainingNanos() {
+        return Math.max(0, nanos - System.nanoTime());
+    }
+
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+    }
+
+    public boolean isExpired() {
+        return nanos - System.nanoTime() <= 0;
+    }
+
+    // The earlier of this deadline and timeout from now, as a nanoTime value
+    public long capNanos(Duration timeout) {
+        long capped = System.nanoTime() + timeout.toNanos();
+        return capped - nanos < 0 ? capped : nanos;
+    }
+
+    // Run the task with this deadline as current()
+    public <T> T call(Callable<T> task) throws Exception {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.call();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    // Same task, but it sees this deadline as current() on whatever thread runs it
+    public <T> Callable<T> wrap(Callable<T> task) {
+        return () -> call(task);
+    }
+}
@@ -0,0 +1,404 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Second cache tier on disk, so a restart does not start cold. Entries are appended to
+ * memory-mapped segment files and found through an in-memory index of key -> position.
+ * Every record carries its own expiry (wall clock, it has to survive a restart) and a
+ * CRC, and the length is written last, so a record torn by a crash is simply where the
+ * startup scan stops. Compaction copies the live records out of mostly dead segments
+ * and drops the oldest segments when the store is over its size.
+ *
+ * Record layout: length (int), crc (int) of the rest, expiresAt millis (long),
+ * key length (int), key (UTF-8), value (JSON).
+ */
+public class DiskCache {
+    private static final Logger logger = LoggerFactory.getLogger(DiskCache.class);
+    private static final int SEGMENT_BYTES = 16 * 1024 * 1024;
+    private static final int HEADER_BYTES = 20;
+    // a sealed segment with less than this share of live bytes is compacted
+    private static final double MIN_LIVE_SHARE = 0.5;
+    private static final Duration MAINTENANCE_INTERVAL = Duration.ofMinutes(5);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Slot> index = new ConcurrentHashMap<>();
+    // oldest first, the last one is the one written to
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private Segment active;
+
+    private DiskCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = Math.max(SEGMENT_BYTES * 2L, maxBytes);
+    }
+
+    /**
+     * Open (or create) the store in directory and rebuild the index from its segments.
+     * Falls back to a disabled cache when the directory is blank or cannot be used.
+     */
+    public static DiskCache open(String directory, long maxBytes) {
+        if (directory == null || directory.isBlank()) {
+            logger.info("Disk cache disabled");
+            return disabled();
+        }
+        DiskCache cache = new DiskCache(Path.of(directory), maxBytes);
+        try {
+            long started = System.nanoTime();
+            cache.recover();
+            logger.info("Disk cache {} loaded {} entries from {} segments in {}ms", directory, cache.index.size(),
+                    cache.segments.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException e) {
+            logger.warn("Disk cache {} unusable, running without it: {}", directory, e.getMessage());
+            return disabled();
+        }
+        ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "disk-cache-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = MAINTENANCE_INTERVAL.toMillis();
+        maintenance.scheduleWithFixedDelay(cache::maintain, interval, interval, TimeUnit.MILLISECONDS);
+        return cache;
+    }
+
+    // Every get misses and every put is dropped
+    public static DiskCache disabled() {
+        return new DiskCache(null, 0);
+    }
+
+    public boolean enabled() {
+        return directory != null;
+    }
+
+    // Typed view on one namespace; ttl is the expiry of every entry put through it
+    public <V> Store<V> store(String namespace, Class<V> type, Duration ttl) {
+        return new Store<>(namespace, mapper.constructType(type), ttl);
+    }
+
+    public <V> Store<V> store(String namespace, JavaType type, Duration ttl) {
+        return new Store<>(namespace, type, ttl);
+    }
+
+    public JavaType listType(Class<?> elementType) {
+        return mapper.getTypeFactory().constructCollectionType(List.class, elementType);
+    }
+
+    public JavaType mapType(Class<?> keyType, Class<?> valueType) {
+        return mapper.getTypeFactory().constructMapType(Map.class, keyType, valueType);
+    }
+
+    public Stats stats() {
+        writeLock.lock();
+        try {
+            long bytes = 0;
+            for (Segment segment : segments.values()) {
+                bytes += segment.position;
+            }
+            return new Stats(index.size(), segments.size(), bytes, hits.get(), misses.get());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private byte[] read(String key) {
+        if (!enabled()) {
+            return null;
+        }
+        Slot slot = index.get(key);
+        if (slot == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        // expired slots stay in the index until maintain() accounts for them
+        if (slot.expiresAt() <= System.currentTimeMillis()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        byte[] value = new byte[slot.valueLength()];
+        slot.segment().buffer.get(slot.valueOffset(), value);
+        return value;
+    }
+
+    private void write(String key, byte[] value, long expiresAt) {
+        if (!enabled()) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_BYTES + keyBytes.length + value.length;
+        if (length > SEGMENT_BYTES) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            Slot previous = index.get(key);
+            append(key, record(keyBytes, value, expiresAt), keyBytes.length, expiresAt);
+            if (previous != null) {
+                previous.segment().liveBytes -= previous.recordLength();
+            }
+        } catch (IOException e) {
+            logger.warn("Disk cache write failed: {}", e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static byte[] record(byte[] key, byte[] value, long expiresAt) {
+        int length = HEADER_BYTES + key.length + value.length;
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(length).putInt(0).putLong(expiresAt).putInt(key.length).put(key).put(value);
+        byte[] bytes = buffer.array();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 8, length - 8);
+        ByteBuffer.wrap(bytes).putInt(4, (int) crc.getValue());
+        return bytes;
+    }
+
+    // Caller holds writeLock. The length goes in last, until then the scan sees the end of the segment.
+    private void append(String key, byte[] record, int keyLength, long expiresAt) throws IOException {
+        if (active == null || active.position + record.length > SEGMENT_BYTES) {
+            roll();
+        }
+        int offset = active.position;
+        active.buffer.put(offset + 4, record, 4, record.length - 4);
+        active.buffer.putInt(offset, record.length);
+        active.position += record.length;
+        active.liveBytes += record.length;
+        index.put(key, new Slot(active, offset, record.length, offset + HEADER_BYTES + keyLength,
+                record.length - HEADER_BYTES - keyLength, expiresAt));
+    }
+
+    // Seal the active segment and start a new one
+    private void roll() throws IOException {
+        long id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        if (active != null) {
+            active.buffer.force();
+        }
+        active = Segment.open(directory.resolve(SEGMENT_PREFIX + String.format("%010d", id) + SEGMENT_SUFFIX), id);
+        segments.put(id, active);
+    }
+
+    // Rebuild the index, later records win. Scanning a segment stops at the first torn or corrupt record.
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                    && p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        long now = System.currentTimeMillis();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long id;
+            try {
+                id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            Segment segment = Segment.open(file, id);
+            segments.put(id, segment);
+            scan(segment, now);
+        }
+        active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+    }
+
+    private void scan(Segment segment, long now) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        CRC32 crc = new CRC32();
+        while (position + HEADER_BYTES <= SEGMENT_BYTES) {
+            int length = buffer.getInt(position);
+            if (length < HEADER_BYTES || position + length > SEGMENT_BYTES) {
+                break;
+            }
+            byte[] body = new byte[length - 8];
+            buffer.get(position + 8, body);
+            crc.reset();
+            crc.update(body);
+            int keyLength = buffer.getInt(position + 16);
+            if ((int) crc.getValue() != buffer.getInt(position + 4) || keyLength < 0 || HEADER_BYTES + keyLength > length) {
+                logger.warn("Disk cache segment {} is torn at {}, ignoring the rest of it", segment.id, position);
+                break;
+            }
+            long expiresAt = buffer.getLong(position + 8);
+            String key = new String(body, 12, keyLength, StandardCharsets.UTF_8);
+            Slot previous = index.remove(key);
+            if (previous != null) {
+                previous.segment().liveBytes -= previous.recordLength();
+            }
+            if (expiresAt > now) {
+                index.put(key, new Slot(segment, position, length, position + HEADER_BYTES + keyLength,
+                        length - HEADER_BYTES - keyLength, expiresAt));
+                segment.liveBytes += length;
+            }
+            position += length;
+        }
+        segment.position = position;
+    }
+
+    /**
+     * Drop expired index entries, copy the live records of mostly dead sealed segments
+     * to the active one, and delete the oldest segments while the store is over maxBytes.
+     */
+    void maintain() {
+        writeLock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            index.forEach((key, slot) -> {
+                if (slot.expiresAt() <= now && index.remove(key, slot)) {
+                    slot.segment().liveBytes -= slot.recordLength();
+                }
+            });
+
+            long total = (long) segments.size() * SEGMENT_BYTES;
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                if (segment == active) {
+                    break;
+                }
+                boolean overSize = total > maxBytes;
+                boolean mostlyDead = segment.liveBytes < segment.position * MIN_LIVE_SHARE;
+                if (!overSize && !mostlyDead) {
+                    continue;
+                }
+                // over the size the oldest records are evicted, otherwise the live ones are kept
+                if (!overSize) {
+                    copyLive(segment);
+                }
+                drop(segment);
+                total -= SEGMENT_BYTES;
+            }
+            if (active != null) {
+                active.buffer.force();
+            }
+        } catch (IOException e) {
+            logger.warn("Disk cache compaction failed: {}", e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void copyLive(Segment segment) throws IOException {
+        int copied = 0;
+        for (Map.Entry<String, Slot> entry : index.entrySet()) {
+            Slot slot = entry.getValue();
+            if (slot.segment() != segment) {
+                continue;
+            }
+            byte[] record = new byte[slot.recordLength()];
+            segment.buffer.get(slot.offset(), record);
+            append(entry.getKey(), record, slot.valueOffset() - slot.offset() - HEADER_BYTES, slot.expiresAt());
+            copied++;
+        }
+        logger.debug("Compacted disk cache segment {}, {} live entries moved", segment.id, copied);
+    }
+
+    // Caller holds writeLock; records still pointing into the segment are forgotten
+    private void drop(Segment segment) throws IOException {
+        index.values().removeIf(slot -> slot.segment() == segment);
+        segments.remove(segment.id);
+        segment.channel.close();
+        Files.deleteIfExists(segment.file);
+    }
+
+    public record Stats(int entries, int segments, long bytes, long hits, long misses) {
+    }
+
+    private record Slot(Segment segment, int offset, int recordLength, int valueOffset, int valueLength, long expiresAt) {
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        // only changed under writeLock
+        private int position;
+        private long liveBytes;
+
+        private Segment(long id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path file, long id) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+            return new Segment(id, file, channel, buffer);
+        }
+    }
+
+    /**
+     * Values of one namespace, stored as JSON. A value that cannot be read back (the class
+     * changed between versions) counts as a miss.
+     */
+    public final class Store<V> {
+        private final String namespace;
+        private final JavaType type;
+        private final long ttlMillis;
+
+        private Store(String namespace, JavaType type, Duration ttl) {
+            this.namespace = namespace;
+            this.type = type;
+            this.ttlMillis = ttl.toMillis();
+        }
+
+        public V get(String key) {
+            byte[] bytes = read(namespace + "|" + key);
+            if (bytes == null) {
+                return null;
+            }
+            try {
+                return mapper.readValue(bytes, type);
+            } catch (IOException e) {
+                logger.debug("Unreadable disk cache entry {}|{}: {}", namespace, key, e.getMessage());
+                return null;
+            }
+        }
+
+        public void put(String key, V value) {
+            if (!enabled() || value == null) {
+                return;
+            }
+            try {
+                write(namespace + "|" + key, mapper.writeValueAsBytes(value), System.currentTimeMillis() + ttlMillis);
+            } catch (IOException e) {
+                logger.warn("Could not serialize disk cache entry {}|{}: {}", namespace, key, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.example;
+
+import com.amadeus.resources.FlightOfferSearch;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Simplified flight offer sent to the frontend, built straight from the SDK objects.
+ * Shared by /search/flights and /trip-info.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record FlightSummary(
+        String origin,
+        String destination,
+        String departure,
+        String arrival,
+        String duration,
+        String price,
+        String currency,
+        String airline,
+        String airlineName,
+        List<Leg> segments,
+        List<String> stopovers
+) {
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Leg(String origin, String destination, String departure, String arrival, String airline,
+                      String airlineName) {
+    }
+
+    // Map every usable offer, skipping the ones without a complete first itinerary
+    public static List<FlightSummary> fromOffers(FlightOfferSearch[] offers) {
+        List<FlightSummary> result = new ArrayList<>();
+        if (offers == null) {
+            return result;
+        }
+        for (FlightOfferSearch offer : offers) {
+            FlightSummary summary = from(offer);
+            if (summary != null) {
+                result.add(summary);
+            }
+        }
+        return result;
+    }
+
+    // Returns null when the offer misses the first/last segment airports or times
+    public static FlightSummary from(FlightOfferSearch offer) {
+        if (offer == null || offer.getItineraries() == null || offer.getItineraries().length == 0) {
+            return null;
+        }
+        FlightOfferSearch.Itinerary itinerary = offer.getItineraries()[0];
+        FlightOfferSearch.SearchSegment[] segments = itinerary == null ? null : itinerary.getSegments();
+        if (segments == null || segments.length == 0 || segments[0] == null || segments[segments.length - 1] == null) {
+            return null;
+        }
+        FlightOfferSearch.SearchSegment firstSegment = segments[0];
+        FlightOfferSearch.AirportInfo departure = firstSegment.getDeparture();
+        FlightOfferSearch.AirportInfo arrival = segments[segments.length - 1].getArrival();
+        if (departure == null || arrival == null
+                || departure.getIataCode() == null || arrival.getIataCode() == null
+                || departure.getAt() == null || arrival.getAt() == null) {
+            return null;
+        }
+
+        List<Leg> legs = new ArrayList<>(segments.length);
+        List<String> stopovers = new ArrayList<>();
+        for (int i = 0; i < segments.length; i++) {
+            FlightOfferSearch.SearchSegment seg = segments[i];
+            if (seg == null || seg.getDeparture() == null || seg.getArrival() == null
+                    || seg.getDeparture().getIataCode() == null || seg.getArrival().getIataCode() == null) {
+                continue;
+            }
+            legs.add(new Leg(
+                    seg.getDeparture().getIataCode(),
+                    seg.getArrival().getIataCode(),
+                    seg.getDeparture().getAt(),
+                    seg.getArrival().getAt(),
+                    seg.getCarrierCode(),
+                    null
+            ));
+            if (i < segments.length - 1) {
+                stopovers.add(seg.getArrival().getIataCode());
+            }
+        }
+
+        FlightOfferSearch.SearchPrice price = offer.getPrice();
+        return new FlightSummary(
+                departure.getIataCode(),
+                arrival.getIataCode(),
+                departure.getAt(),
+                arrival.getAt(),
+                itinerary.getDuration(),
+                price != null ? text(price.getTotal()) : null,
+                price != null ? text(price.getCurrency()) : null,
+                firstSegment.getCarrierCode(),
+                null,
+                legs,
+                stopovers.isEmpty() ? null : stopovers
+        );
+    }
+
+    // Copy with airlineName set from names (carrier code -> name, null when unknown)
+    public FlightSummary withAirlineNames(Function<String, String> names) {
+        List<Leg> namedLegs = null;
+        if (segments != null) {
+            namedLegs = new ArrayList<>(segments.size());
+            for (Leg leg : segments) {
+                namedLegs.add(new Leg(leg.origin(), leg.destination(), leg.departure(), leg.arrival(),
+                        leg.airline(), names.apply(leg.airline())));
+            }
+        }
+        return new FlightSummary(origin, destination, departure, arrival, duration, price, currency,
+                airline, names.apply(airline), namedLegs, stopovers);
+    }
+
+    // /search/flights has always sent duration, empty when the offer has none; /trip-info leaves it out
+    public FlightSummary withDurationOrEmpty() {
+        if (duration != null) {
+            return this;
+        }
+        return new FlightSummary(origin, destination, departure, arrival, "", price, currency,
+                airline, airlineName, segments, stopovers);
+    }
+
+    // First offers with a distinct route + departure time, at most limit of them
+    public static List<FlightSummary> distinct(List<FlightSummary> flights, int limit) {
+        List<FlightSummary> result = new ArrayList<>();
+        Set<String> seenFlights = new HashSet<>();
+        for (FlightSummary flight : flights) {
+            if (!seenFlights.add(flight.origin() + flight.destination() + flight.departure())) {
+                continue;
+            }
+            result.add(flight);
+            if (result.size() >= limit) break;
+        }
+        return result;
+    }
+
+    private static String text(Object value) {
+        return value != null ? String.valueOf(value) : null;
+    }
+}
@@ -0,0 +1,143 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * One cache for every geocoder (Amadeus locations and Google geocoding). Keys are normalized
+ * (case, whitespace, accents, and three letters read as an IATA code), so "Malmö", " malmo "
+ * and "MALMO" share an entry. Coordinates are shared between the geocoders; "not found" is
+ * remembered per geocoder and for a short time, since one not knowing a name says little
+ * about the other. Lookups of the same key that overlap run once.
+ */
+public class GeocodeCache {
+    private static final Logger logger = LoggerFactory.getLogger(GeocodeCache.class);
+    // places do not move, the TTL only bounds how long a wrong answer can stick
+    private static final Duration FOUND_TTL = Duration.ofDays(30);
+    private static final Duration MISSING_TTL = Duration.ofHours(1);
+    private static final int MAX_ENTRIES = 20_000;
+    private static final Pattern IATA = Pattern.compile("[a-z]{3}");
+
+    public enum Source {
+        AMADEUS,
+        GOOGLE
+    }
+
+    private final BoundedCache<String, Coordinates> found;
+    private final BoundedCache<String, Boolean> missing;
+    private final DiskCache.Store<Coordinates> diskFound;
+    private final DiskCache.Store<Boolean> diskMissing;
+    private final Map<String, CompletableFuture<Optional<double[]>>> inFlight = new ConcurrentHashMap<>();
+
+    public GeocodeCache(DiskCache diskCache) {
+        this.found = new BoundedCache<>("geocodes", MAX_ENTRIES, FOUND_TTL);
+        this.missing = new BoundedCache<>("geocode misses", MAX_ENTRIES, MISSING_TTL);
+        this.diskFound = diskCache.store("geocodes", Coordinates.class, FOUND_TTL);
+        this.diskMissing = diskCache.store("geocode-misses", Boolean.class, MISSING_TTL);
+    }
+
+    /**
+     * Coordinates for the query, from the cache or from lookup. The lookup completes empty
+     * when the geocoder has no match (cached as a miss) and exceptionally when the call
+     * failed (not cached, the caller gets empty).
+     */
+    public CompletableFuture<Optional<double[]>> geocode(Source source, String query,
+                                                         Function<String, CompletableFuture<Optional<double[]>>> lookup) {
+        String key = key(query);
+        if (key.isEmpty()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        Coordinates cached = cachedCoordinates(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(Optional.of(cached.toArray()));
+        }
+        String missKey = source + "|" + key;
+        if (missing.get(missKey) != null || diskMissing.get(missKey) != null) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        CompletableFuture<Optional<double[]>> promise = new CompletableFuture<>();
+        CompletableFuture<Optional<double[]>> running = inFlight.putIfAbsent(missKey, promise);
+        if (running != null) {
+            return running;
+        }
+        CompletableFuture<Optional<double[]>> result;
+        try {
+            result = lookup.apply(query);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((coords, error) -> {
+            inFlight.remove(missKey, promise);
+            if (error != null) {
+                logger.warn("Geocoding '{}' with {} failed: {}", query, source, error.getMessage());
+                promise.complete(Optional.empty());
+                return;
+            }
+            if (coords != null && coords.isPresent()) {
+                Coordinates value = new Coordinates(coords.get()[0], coords.get()[1]);
+                found.put(key, value);
+                diskFound.put(key, value);
+                promise.complete(coords);
+            } else {
+                missing.put(missKey, Boolean.TRUE);
+                diskMissing.put(missKey, Boolean.TRUE);
+                promise.complete(Optional.empty());
+            }
+        });
+        return promise;
+    }
+
+    // Blocking variant for geocoders without an async API; lookup returns null for "no match"
+    public double[] geocodeBlocking(Source source, String query, Function<String, double[]> lookup) {
+        return geocode(source, query, q -> {
+            try {
+                return CompletableFuture.completedFuture(Optional.ofNullable(lookup.apply(q)));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }).join().orElse(null);
+    }
+
+    public BoundedCache.Stats stats() {
+        return found.stats();
+    }
+
+    private Coordinates cachedCoordinates(String key) {
+        Coordinates cached = found.get(key);
+        if (cached == null) {
+            cached = diskFound.get(key);
+            if (cached != null) {
+                found.put(key, cached);
+            }
+        }
+        return cached;
+    }
+
+    // "  Malmö " -> "malmo", "arn" -> "iata:ARN"
+    static String key(String query) {
+        if (query == null) {
+            return "";
+        }
+        String normalized = LocationAutocomplete.normalize(query).trim().replaceAll("\\s+", " ");
+        if (IATA.matcher(normalized).matches()) {
+            return "iata:" + normalized.toUpperCase(Locale.ROOT);
+        }
+        return normalized;
+    }
+
+    public record Coordinates(double lat, double lng) {
+        double[] toArray() {
+            return new double[]{lat, lng};
+        }
+    }
+}
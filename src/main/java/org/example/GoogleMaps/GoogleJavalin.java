@@ -3,16 +3,33 @@ package org.example.GoogleMaps;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
 import org.example.AppConfig;
+import org.example.Reply;
 import org.example.ValidationUtils;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public class GoogleJavalin {
 
     private final AppConfig config;
+    private final GoogleMapsClient mapsClient;
+    private final RouteCache routeCache;
 
-    public GoogleJavalin(AppConfig config) {
+    private static final Reply MAPS_NOT_CONFIGURED = new Reply(503, Map.of(
+            "error", "Google Maps API not configured",
+            "message", "Set GOOGLE_MAPS_API_KEY to enable maps endpoints."
+    ));
+
+    // Google Maps could not be reached, answered with an error or sent something unreadable
+    private static final Reply MAPS_FAILED = new Reply(502, Map.of(
+            "error", "Google Maps request failed"
+    ));
+
+    public GoogleJavalin(AppConfig config, GoogleMapsClient mapsClient, RouteCache routeCache) {
         this.config = config;
+        this.mapsClient = mapsClient;
+        this.routeCache = routeCache;
     }
 
     public void registerRoutes(Javalin app) {
@@ -23,10 +40,7 @@ public class GoogleJavalin {
 
     private boolean ensureMapsConfigured(Context ctx) {
         if (config.googleMapsApiKey().isEmpty()) {
-            ctx.status(503).json(Map.of(
-                    "error", "Google Maps API not configured",
-                    "message", "Set GOOGLE_MAPS_API_KEY to enable maps endpoints."
-            ));
+            MAPS_NOT_CONFIGURED.send(ctx);
             return false;
         }
         return true;
@@ -47,12 +61,11 @@ public class GoogleJavalin {
                 return;
             }
 
-            RouteInfo routeInfo = new RouteInfo(startPlace, endPlace, config.googleMapsApiKey().orElse(""));
-            routeInfo.fetchRoute();
-
-            String routeInfoRes =routeInfo.getRouteTimeAndDist();
-
-            ctx.result(routeInfoRes);
+            RouteInfo routeInfo = new RouteInfo(startPlace, endPlace, mapsClient, routeCache);
+            ctx.future(() -> routeInfo.fetchRouteAsync()
+                    .thenApply(route -> Reply.ok(route.getRouteTimeAndDist()))
+                    .exceptionally(e -> MAPS_FAILED)
+                    .thenAccept(reply -> reply.send(ctx)));
 
         });
 
@@ -73,12 +86,11 @@ public class GoogleJavalin {
                 return;
             }
 
-            RouteInfo routeInfo = new RouteInfo(startPlace, endPlace, config.googleMapsApiKey().orElse(""));
-            routeInfo.fetchRoute();
-
-            String polyline = routeInfo.getPolyline();
-
-            ctx.result(polyline);
+            RouteInfo routeInfo = new RouteInfo(startPlace, endPlace, mapsClient, routeCache);
+            ctx.future(() -> routeInfo.fetchRouteAsync()
+                    .thenApply(route -> Reply.ok(route.getPolyline()))
+                    .exceptionally(e -> MAPS_FAILED)
+                    .thenAccept(reply -> reply.send(ctx)));
 
         });
     }
@@ -86,30 +98,31 @@ public class GoogleJavalin {
 
     public void thePlaces (Javalin app) {
 
-        app.get("/places/nearby", ctx -> {
-            if (!ensureMapsConfigured(ctx)) {
-                return;
-            }
-            String lat = ctx.queryParam("lat");
-            String lng = ctx.queryParam("lng");
-            String placeType = ctx.queryParam("type");
-
-            if (!ValidationUtils.isValidCoordinates(lat, lng)) {
-                ctx.status(400).result("lat and lng must be provided");
-                return;
-            }
-            if (placeType == null || placeType.isBlank()) {
-                ctx.status(400).result("type must be provided");
-                return;
-            }
+        app.get("/places/nearby", ctx -> ctx.future(() -> placesNearby(ctx::queryParam)
+                .thenAccept(reply -> reply.send(ctx))));
 
-            PlacesNearby placesNearby = new PlacesNearby(lat, lng, config.googleMapsApiKey().orElse(""));
+    }
 
-            String placesRes = placesNearby.getPlaceNameAndAdress(placeType);
+    // /places/nearby, also run as part of /batch
+    public CompletableFuture<Reply> placesNearby(Function<String, String> param) {
+        if (config.googleMapsApiKey().isEmpty()) {
+            return CompletableFuture.completedFuture(MAPS_NOT_CONFIGURED);
+        }
+        String lat = param.apply("lat");
+        String lng = param.apply("lng");
+        String placeType = param.apply("type");
 
-            ctx.result(placesRes);
-        });
+        if (!ValidationUtils.isValidCoordinates(lat, lng)) {
+            return CompletableFuture.completedFuture(new Reply(400, "lat and lng must be provided"));
+        }
+        if (placeType == null || placeType.isBlank()) {
+            return CompletableFuture.completedFuture(new Reply(400, "type must be provided"));
+        }
 
+        PlacesNearby placesNearby = new PlacesNearby(lat, lng, mapsClient);
+        return placesNearby.getPlaceNameAndAdressAsync(placeType)
+                .thenApply(places -> Reply.rawJson(200, places))
+                .exceptionally(e -> MAPS_FAILED);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,112 @@
+package org.example.GoogleMaps;
+
+import org.example.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Shared HTTP client for every Google Maps call, keeps connections (and TLS sessions) alive between requests
+public class GoogleMapsClient {
+    private static final Logger logger = LoggerFactory.getLogger(GoogleMapsClient.class);
+
+    private final HttpClient httpClient;
+    private final String apiKey;
+    private final String baseUrl;
+    private final Duration requestTimeout;
+
+    // baseUrl is the prefix of every path and ends with a slash, GOOGLE_MAPS_BASE_URL in the app
+    public GoogleMapsClient(String apiKey, String baseUrl, Duration connectTimeout, Duration requestTimeout) {
+        this.apiKey = apiKey;
+        this.baseUrl = baseUrl;
+        this.requestTimeout = requestTimeout;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    public boolean hasApiKey() {
+        return apiKey != null && !apiKey.isBlank();
+    }
+
+    public String apiKey() {
+        return apiKey;
+    }
+
+    public String baseUrl() {
+        return baseUrl;
+    }
+
+    // GET <baseUrl><path>?params&key=..., completes with the response body
+    public CompletableFuture<String> getAsync(String path, Map<String, String> params) {
+        if (!hasApiKey()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Google Maps API key missing"));
+        }
+        StringBuilder url = new StringBuilder(baseUrl).append(path).append('?');
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            url.append(param.getKey()).append('=')
+                    .append(URLEncoder.encode(param.getValue(), StandardCharsets.UTF_8))
+                    .append('&');
+        }
+        url.append("key=").append(URLEncoder.encode(apiKey, StandardCharsets.UTF_8));
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url.toString()))
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+        Metrics.Upstream metrics = Metrics.upstream("google", path);
+        long started = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> {
+                    boolean failed = error != null || response.statusCode() >= 400;
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause()
+                            : error;
+                    if (cause instanceof HttpTimeoutException) {
+                        metrics.timeout();
+                    }
+                    if (response != null && response.statusCode() == 429) {
+                        metrics.rateLimited();
+                    }
+                    metrics.record(System.nanoTime() - started, failed);
+                    if (cause != null) {
+                        logger.warn("Google Maps {} failed: {}", path, cause.toString());
+                    } else if (response.statusCode() >= 400) {
+                        logger.warn("Google Maps {} returned {}", path, response.statusCode());
+                    }
+                })
+                .thenApply(response -> {
+                    if (response.statusCode() >= 400) {
+                        throw new CompletionException(new IllegalStateException(
+                                "Google Maps " + path + " returned " + response.statusCode()));
+                    }
+                    return response.body();
+                });
+    }
+
+    // Blocking variant, a failed call is thrown to the caller like the asynchronous one completes
+    public String get(String path, Map<String, String> params) {
+        try {
+            String body = getAsync(path, params).join();
+            return body == null ? "{}" : body;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
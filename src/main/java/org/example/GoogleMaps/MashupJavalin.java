@@ -8,16 +8,16 @@ import io.javalin.Javalin;
 import io.javalin.http.Context;
 import org.example.AmadeusService;
 import org.example.AppConfig;
+import org.example.CircuitOpenException;
+import org.example.GeocodeCache;
+import org.example.Reply;
 import org.example.ValidationUtils;
 
-import java.net.URI;
-import java.net.URLEncoder;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
 import java.util.List;
 import java.util.Map;
@@ -26,10 +26,17 @@ public class MashupJavalin {
 
     private final AppConfig config;
     private final AmadeusService amadeusService;
+    private final GoogleMapsClient mapsClient;
+    private final RouteCache routeCache;
+    private final GeocodeCache geocodeCache;
 
-    public MashupJavalin(AppConfig config, AmadeusService amadeusService) {
+    public MashupJavalin(AppConfig config, AmadeusService amadeusService, GoogleMapsClient mapsClient,
+                         RouteCache routeCache, GeocodeCache geocodeCache) {
         this.config = config;
         this.amadeusService = amadeusService;
+        this.mapsClient = mapsClient;
+        this.routeCache = routeCache;
+        this.geocodeCache = geocodeCache;
     }
 
     private boolean ensureAmadeusConfigured(Context ctx) {
@@ -113,7 +120,9 @@ public class MashupJavalin {
         });
 
     }
-    private static String encodePolyline(double[][] coords) {
+
+    // Google encoded polyline format, 5 decimals
+    static String encodePolyline(double[][] coords) {
         StringBuilder result = new StringBuilder();
         long lastLat = 0;
         long lastLng = 0;
@@ -178,7 +187,7 @@ public class MashupJavalin {
             }
             double[] coords = null;
             if (hotelName != null && !hotelName.isBlank()) {
-                coords = geocodeToCoords(hotelName, apiKey.get()).orElse(null);
+                coords = geocodeToCoords(hotelName).join().orElse(null);
             } else if (city != null && !city.isBlank()) {
                 coords = amadeusService.geocodeCityToCoords(city);
             } else {
@@ -194,24 +203,17 @@ public class MashupJavalin {
             String lat = String.valueOf(coords[0]);
             String lng = String.valueOf(coords[1]);
 
-            PlacesNearby placesNearby = new PlacesNearby(lat, lng, apiKey.get());
-
-            JsonArray sightsArr;
-            try {
-                String results = placesNearby.getPlaceNameAndAdress(placeType);
-                sightsArr = JsonParser.parseString(results).getAsJsonArray();
-            } catch (Exception e) {
-                ctx.status(500).result("Failed to get nearby places");
-                return;
-            }
+            // sights load in the background while the hotels are looked up
+            PlacesNearby placesNearby = new PlacesNearby(lat, lng, mapsClient);
+            CompletableFuture<String> sightsFuture = placesNearby.getPlaceNameAndAdressAsync(placeType);
 
             JsonArray hotelsArr = new JsonArray();
+            List<CompletableFuture<JsonObject>> thumbnails = new ArrayList<>();
             try {
                 JsonArray hotels = JsonParser
                         .parseString(amadeusService.getHotelsByGeocode(coords[0], coords[1], 5))
                         .getAsJsonArray();
 
-                HttpClient client = HttpClient.newHttpClient();
                 String checkInDate = ctx.queryParam("checkInDate");
                 if (checkInDate == null || checkInDate.isBlank()) {
                     checkInDate = LocalDate.now().plusDays(1).toString();
@@ -222,6 +224,17 @@ public class MashupJavalin {
                 int rooms = 1;
                 try { rooms = Integer.parseInt(ctx.queryParam("roomQuantity")); } catch (Exception ignored) {}
 
+                List<String> hotelIds = new ArrayList<>();
+                for (var elem : hotels) {
+                    JsonObject hObj = elem.getAsJsonObject();
+                    if (hObj.has("hotelId")) {
+                        hotelIds.add(hObj.get("hotelId").getAsString());
+                    }
+                }
+                // prices for all hotels in one batched lookup
+                Map<String, JsonArray> offersByHotel = amadeusService.getHotelOffersBatched(
+                        hotelIds, adults, checkInDate, rooms, checkOutDate, hotelIds.size());
+
                 for (var elem : hotels) {
                     JsonObject hObj = elem.getAsJsonObject();
                     if (!hObj.has("hotelId") || !hObj.has("name") || !hObj.has("geoCode")) {
@@ -236,9 +249,8 @@ public class MashupJavalin {
                     // Fetch price
                     double price;
                     try {
-                        JsonArray offerRoot = JsonParser
-                                .parseString(amadeusService.getHotelOffers(hId, adults, checkInDate, rooms, checkOutDate))                                .getAsJsonArray();
-                        if (offerRoot.size() == 0) continue;
+                        JsonArray offerRoot = offersByHotel.get(hId);
+                        if (offerRoot == null || offerRoot.size() == 0) continue;
                         JsonArray offerList = offerRoot.get(0).getAsJsonObject().getAsJsonArray("offers");
                         if (offerList == null || offerList.size() == 0) continue;
                         price = offerList.get(0).getAsJsonObject()
@@ -248,42 +260,39 @@ public class MashupJavalin {
                         continue; // skip if pricing unavailable
                     }
 
-                    // Fetch thumbnail from Google Places
-                    String thumb = null;
-                    try {
-                        String encoded = URLEncoder.encode(hName + (city != null ? ", " + city : ""), StandardCharsets.UTF_8);
-                        String url = "https://maps.googleapis.com/maps/api/place/findplacefromtext/json?input=" +
-                                encoded + "&inputtype=textquery&fields=photos&key=" + apiKey.get();
-                        HttpRequest req = HttpRequest.newBuilder().uri(URI.create(url)).build();
-                        HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString());
-                        JsonObject gObj = JsonParser.parseString(resp.body()).getAsJsonObject();
-                        JsonArray candidates = gObj.getAsJsonArray("candidates");
-                        if (candidates != null && candidates.size() > 0) {
-                            JsonArray photos = candidates.get(0).getAsJsonObject().getAsJsonArray("photos");
-                            if (photos != null && photos.size() > 0) {
-                                String ref = photos.get(0).getAsJsonObject().get("photo_reference").getAsString();
-                                thumb = "https://maps.googleapis.com/maps/api/place/photo?maxwidth=400&photo_reference=" +
-                                        ref + "&key=" + apiKey.get();
-                            }
-                        }
-                    } catch (Exception e) {
-                        thumb = null;
-                    }
-                    if (thumb == null) continue;
-
+                    // Fetch thumbnail from Google Places, all lookups run in parallel
                     JsonObject out = new JsonObject();
                     out.addProperty("name", hName);
                     out.addProperty("lat", hLat);
                     out.addProperty("lng", hLng);
-                    out.addProperty("thumbnailUrl", thumb);
                     out.addProperty("nightlyPrice", price);
-                    hotelsArr.add(out);
+                    thumbnails.add(findThumbnail(hName + (city != null ? ", " + city : ""))
+                            .thenApply(thumb -> {
+                                if (thumb != null) {
+                                    out.addProperty("thumbnailUrl", thumb);
+                                }
+                                return out;
+                            }));
+                }
+                for (CompletableFuture<JsonObject> thumbnail : thumbnails) {
+                    JsonObject out = thumbnail.join();
+                    if (out.has("thumbnailUrl")) {
+                        hotelsArr.add(out);
+                    }
                 }
             } catch (Exception e) {
                 ctx.status(500).result("Failed to get hotels");
                 return;
             }
 
+            JsonArray sightsArr;
+            try {
+                sightsArr = JsonParser.parseString(sightsFuture.join()).getAsJsonArray();
+            } catch (Exception e) {
+                ctx.status(500).result("Failed to get nearby places");
+                return;
+            }
+
             JsonObject response = new JsonObject();
             response.add("hotels", hotelsArr);
             response.add("sights", sightsArr);
@@ -313,13 +322,15 @@ public class MashupJavalin {
                 return;
             }
 
+            // Google geocodes the hotel while Amadeus geocodes the airport
+            CompletableFuture<Optional<double[]>> hotelGeocode = geocodeToCoords(hotel);
             double[] airportCoords = amadeusService.geocodeCityToCoords(airport);
             if (airportCoords == null) {
                 ctx.status(404).result("Could not find coordinates for airport");
                 return;
             }
 
-            double[] hotelCoords = geocodeToCoords(hotel, apiKey.get()).orElse(null);
+            double[] hotelCoords = hotelGeocode.join().orElse(null);
             if (hotelCoords == null) {
                 ctx.status(404).result("Could not find coordinates for hotel");
                 return;
@@ -327,8 +338,13 @@ public class MashupJavalin {
             String airportLngLat = airportCoords[0] + "," + airportCoords[1];
             String hotelLngLat = hotelCoords[0] + "," + hotelCoords[1];
 
-            RouteInfo route = new RouteInfo(airportLngLat, hotelLngLat, apiKey.get());
-            route.fetchRoute();
+            RouteInfo route = new RouteInfo(airportLngLat, hotelLngLat, mapsClient, routeCache);
+            try {
+                route.fetchRoute();
+            } catch (Exception e) {
+                ctx.status(500).result("Unable to fetch route information");
+                return;
+            }
 
             String polyline = route.getPolyline();
             String distance = route.getDistance();
@@ -391,7 +407,7 @@ public class MashupJavalin {
                 String cityCoordStr = cityCoords[0] + "," + cityCoords[1];
                 String airportCoordStr = airportCoords[0] + "," + airportCoords[1];
 
-                RouteInfo routeInfo = new RouteInfo(cityCoordStr, airportCoordStr, apiKey.get());
+                RouteInfo routeInfo = new RouteInfo(cityCoordStr, airportCoordStr, mapsClient, routeCache);
                 routeInfo.fetchRoute();
 
                 String polyline = routeInfo.getPolyline();
@@ -479,6 +495,8 @@ public class MashupJavalin {
                 ctx.json(airports);
             } catch (ResponseException e) {
                 ctx.status(502).result("Failed to fetch airports");
+            } catch (CircuitOpenException e) {
+                Reply.unavailable(e).send(ctx);
             } catch (TimeoutException e) {
                 ctx.status(504).result("Request timed out");
             } catch (Exception e) {
@@ -489,30 +507,56 @@ public class MashupJavalin {
 
     }
 
-    private Optional<double[]> geocodeToCoords(String address, String apiKey) {
-        if (apiKey == null || apiKey.isBlank()) {
-            return Optional.empty();
-        }
-        try {
-            String encoded = URLEncoder.encode(address, StandardCharsets.UTF_8);
-            String url = "https://maps.googleapis.com/maps/api/geocode/json?address=" + encoded + "&key=" + apiKey;
-            HttpClient client = HttpClient.newHttpClient();
-            HttpRequest req = HttpRequest.newBuilder().uri(URI.create(url)).build();
-            HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString());
-            JsonObject root = JsonParser.parseString(resp.body()).getAsJsonObject();
-            JsonArray results = root.getAsJsonArray("results");
-            if (results == null || results.size() == 0) {
-                return Optional.empty();
-            }
-            JsonObject location = results.get(0)
-                    .getAsJsonObject()
-                    .getAsJsonObject("geometry")
-                    .getAsJsonObject("location");
-            double lat = location.get("lat").getAsDouble();
-            double lng = location.get("lng").getAsDouble();
-            return Optional.of(new double[]{lat, lng});
-        } catch (Exception e) {
-            return Optional.empty();
+    private CompletableFuture<Optional<double[]>> geocodeToCoords(String address) {
+        if (!mapsClient.hasApiKey()) {
+            return CompletableFuture.completedFuture(Optional.empty());
         }
+        return geocodeCache.geocode(GeocodeCache.Source.GOOGLE, address, this::googleGeocode);
+    }
+
+    // Google geocoding behind the cache: empty only for ZERO_RESULTS, other failures complete exceptionally
+    private CompletableFuture<Optional<double[]>> googleGeocode(String address) {
+        return mapsClient.getAsync("geocode/json", Map.of("address", address))
+                .thenApply(body -> {
+                    JsonObject root = JsonParser.parseString(body).getAsJsonObject();
+                    String status = root.has("status") ? root.get("status").getAsString() : "";
+                    if ("ZERO_RESULTS".equals(status)) {
+                        return Optional.<double[]>empty();
+                    }
+                    JsonArray results = root.getAsJsonArray("results");
+                    if (!"OK".equals(status) || results == null || results.size() == 0) {
+                        throw new IllegalStateException("Geocoding answered " + (status.isEmpty() ? "nothing" : status));
+                    }
+                    JsonObject location = results.get(0)
+                            .getAsJsonObject()
+                            .getAsJsonObject("geometry")
+                            .getAsJsonObject("location");
+                    double lat = location.get("lat").getAsDouble();
+                    double lng = location.get("lng").getAsDouble();
+                    return Optional.of(new double[]{lat, lng});
+                });
+    }
+
+    // Photo url of the first Places match, or null
+    private CompletableFuture<String> findThumbnail(String input) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("input", input);
+        params.put("inputtype", "textquery");
+        params.put("fields", "photos");
+        return mapsClient.getAsync("place/findplacefromtext/json", params)
+                .thenApply(body -> {
+                    JsonObject gObj = JsonParser.parseString(body).getAsJsonObject();
+                    JsonArray candidates = gObj.getAsJsonArray("candidates");
+                    if (candidates != null && candidates.size() > 0) {
+                        JsonArray photos = candidates.get(0).getAsJsonObject().getAsJsonArray("photos");
+                        if (photos != null && photos.size() > 0) {
+                            String ref = photos.get(0).getAsJsonObject().get("photo_reference").getAsString();
+                            return mapsClient.baseUrl() + "place/photo?maxwidth=400&photo_reference=" +
+                                    ref + "&key=" + mapsClient.apiKey();
+                        }
+                    }
+                    return (String) null;
+                })
+                .exceptionally(e -> null);
     }
-}
\ No newline at end of file
+}
@@ -3,58 +3,56 @@ package org.example.GoogleMaps;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class PlacesNearby {
 
-    private final String apiKey;
+    private final GoogleMapsClient mapsClient;
     private final String lat;
     private final String lng;
     private String jSonPlaces;
     private int radius = 2000;
 
-    public PlacesNearby(String lat, String lng, String apiKey) {
+    public PlacesNearby(String lat, String lng, GoogleMapsClient mapsClient) {
         this.lat = lat;
         this.lng = lng;
-        this.apiKey = apiKey;
+        this.mapsClient = mapsClient;
     }
 
     public String fetchPlaces(String placeType) {
-        if (apiKey == null || apiKey.isBlank()) {
-            throw new IllegalStateException("Google Maps API key missing");
-        }
-        HttpClient httpClient = HttpClient.newHttpClient();
-        HttpRequest httpRequest =
-                HttpRequest.newBuilder()
-                        .uri(URI.create("https://maps.googleapis.com/maps/api/place/nearbysearch/json" +
-                                "?location=" + lat + "," + lng +
-                                "&radius=" + radius +
-                                "&type=" + placeType +
-                                "&key=" + apiKey))
-                        .build();
-
-        HttpResponse<String> response = null;
-        try {
-            response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-        }
-        if (response == null || response.body() == null) {
-            jSonPlaces = "{}";
-            return jSonPlaces;
+        jSonPlaces = mapsClient.get("place/nearbysearch/json", placeParams(placeType));
+        return jSonPlaces;
+    }
+
+    // Non-blocking variant of getPlaceNameAndAdress
+    public CompletableFuture<String> getPlaceNameAndAdressAsync(String placeType) {
+        if (!mapsClient.hasApiKey()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Google Maps API key missing"));
         }
-        jSonPlaces = response.body();
+        return mapsClient.getAsync("place/nearbysearch/json", placeParams(placeType))
+                .thenApply(body -> {
+                    jSonPlaces = body == null ? "{}" : body;
+                    return simplifyPlaces(placeType);
+                });
+    }
 
-        return jSonPlaces;
+    private Map<String, String> placeParams(String placeType) {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("location", lat + "," + lng);
+        params.put("radius", String.valueOf(radius));
+        params.put("type", placeType);
+        return params;
     }
 
     public String getPlaceNameAndAdress(String placeType) {
 
         fetchPlaces(placeType);
+        return simplifyPlaces(placeType);
+    }
+
+    private String simplifyPlaces(String placeType) {
         JsonObject responseJObj = JsonParser.parseString(jSonPlaces).getAsJsonObject();  //converts Json String answer to JsonObject
 
         JsonArray placesResArr = responseJObj.getAsJsonArray("results");
@@ -0,0 +1,71 @@
+package org.example.GoogleMaps;
+
+import org.example.BoundedCache;
+import org.example.DiskCache;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Directions results shared by every RouteInfo. Only distance, duration and the encoded
+ * overview polyline are kept, not the Directions JSON. The key is the normalized origin,
+ * destination and mode, with coordinates rounded to precision decimals, so nearby points
+ * such as the same hotel geocoded twice share one entry. Routes are also written to the
+ * disk tier, so they survive a restart.
+ */
+public class RouteCache {
+    private static final Pattern COORDINATES = Pattern.compile("\\s*(-?\\d+(?:\\.\\d+)?)\\s*,\\s*(-?\\d+(?:\\.\\d+)?)\\s*");
+
+    private final int precision;
+    private final BoundedCache<String, RouteInfo.Route> routes;
+    private final DiskCache.Store<RouteInfo.Route> diskRoutes;
+
+    public RouteCache(int precision, int maxRoutes, Duration ttl, DiskCache diskCache) {
+        this.precision = Math.max(0, precision);
+        this.routes = new BoundedCache<>("routes", maxRoutes, ttl);
+        this.diskRoutes = diskCache.store("routes", RouteInfo.Route.class, ttl);
+    }
+
+    public RouteInfo.Route get(String origin, String destination, String mode) {
+        String key = key(origin, destination, mode);
+        RouteInfo.Route route = routes.get(key);
+        if (route == null) {
+            route = diskRoutes.get(key);
+            if (route != null) {
+                routes.put(key, route);
+            }
+        }
+        return route;
+    }
+
+    public void put(String origin, String destination, String mode, RouteInfo.Route route) {
+        String key = key(origin, destination, mode);
+        routes.put(key, route);
+        diskRoutes.put(key, route);
+    }
+
+    public BoundedCache.Stats stats() {
+        return routes.stats();
+    }
+
+    private String key(String origin, String destination, String mode) {
+        return mode + "|" + normalize(origin) + "|" + normalize(destination);
+    }
+
+    // "59.32932,18.06858" -> "59.329,18.069" with precision 3, place names trimmed and lower case
+    private String normalize(String place) {
+        Matcher matcher = COORDINATES.matcher(place);
+        if (matcher.matches()) {
+            return round(matcher.group(1)) + "," + round(matcher.group(2));
+        }
+        return place.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private String round(String number) {
+        return new BigDecimal(number).setScale(precision, RoundingMode.HALF_UP).toPlainString();
+    }
+}
@@ -3,13 +3,9 @@ package org.example.GoogleMaps;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import java.io.IOException;
-import java.net.URI;
-import java.net.URLEncoder;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class RouteInfo { // använder Google maps Distance API
     //Distans från en startdestination till en slutdestination
@@ -17,132 +13,121 @@ public class RouteInfo { // använder Google maps Distance API
     //hämta longitude och latitude från amadeus
 
 
-    private final String apiKey;
+    private static final String MODE = "driving";
+
+    private final GoogleMapsClient mapsClient;
+    private final RouteCache routeCache;
     private final String startPlace;
     private final String endPlace;
-    private String jSonRoute = "";
+    private Route route = Route.NONE;
 
-    public RouteInfo(String startPlace, String endPlace, String apiKey) {
-        this.apiKey = apiKey;
+    public RouteInfo(String startPlace, String endPlace, GoogleMapsClient mapsClient, RouteCache routeCache) {
+        this.mapsClient = mapsClient;
+        this.routeCache = routeCache;
         this.startPlace = startPlace;
         this.endPlace = endPlace;
     }
 
     public void fetchRoute() {
-        if (apiKey == null || apiKey.isBlank()) {
-            throw new IllegalStateException("Google Maps API key missing");
+        Route cached = routeCache.get(startPlace, endPlace, MODE);
+        if (cached != null) {
+            route = cached;
+            return;
         }
-        HttpClient httpClient = HttpClient.newHttpClient();
-
-        String encodeStart = URLEncoder.encode(startPlace, StandardCharsets.UTF_8);
-        String encodeEnd   = URLEncoder.encode(endPlace, StandardCharsets.UTF_8);
-
-        HttpRequest httpRequest =
-                HttpRequest.newBuilder()
-                        .uri(URI.create("https://maps.googleapis.com/maps/api/directions/json?mode=driving&origin=" + encodeStart + "&destination=" + encodeEnd + "&key=" + apiKey))                        .build();
+        route = store(Route.parse(mapsClient.get("directions/json", routeParams())));
+    }
 
-        HttpResponse<String> response = null;
-        try {
-            response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+    // Non-blocking variant, completes with this RouteInfo once the route is loaded
+    public CompletableFuture<RouteInfo> fetchRouteAsync() {
+        Route cached = routeCache.get(startPlace, endPlace, MODE);
+        if (cached != null) {
+            route = cached;
+            return CompletableFuture.completedFuture(this);
         }
-        if (response == null || response.body() == null) {
-            jSonRoute = "{}";
-            return;
+        if (!mapsClient.hasApiKey()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Google Maps API key missing"));
         }
-        jSonRoute = response.body();
-        // System.out.println(response.body());
-
+        return mapsClient.getAsync("directions/json", routeParams())
+                .thenApply(body -> {
+                    route = store(Route.parse(body == null ? "{}" : body));
+                    return this;
+                });
     }
 
+    // Only found routes are cached, a failed call is asked again next time
+    private Route store(Route fetched) {
+        if (fetched.found()) {
+            routeCache.put(startPlace, endPlace, MODE, fetched);
+        }
+        return fetched;
+    }
 
-    public String getRouteTimeAndDist() {
-
-        JsonObject responseJObj = JsonParser.parseString(jSonRoute).getAsJsonObject();  //converts Json String answer to JsonObject
-
-        JsonArray routesArr = responseJObj.getAsJsonArray("routes");
-
-        if (routesArr != null && routesArr.size() > 0) {
-            JsonObject answerArrFirst = routesArr.get(0).getAsJsonObject();
-
-            JsonArray legs = answerArrFirst.getAsJsonArray("legs");
-
-            if (legs != null && legs.size() > 0) {
-
-                JsonObject answerLegsArr = legs.get(0).getAsJsonObject();
-
-                JsonObject distanceKm = answerLegsArr.getAsJsonObject("distance"); //distansen
-
-                JsonObject timeTrip = answerLegsArr.getAsJsonObject("duration");
-
-                if (distanceKm == null || timeTrip == null) {
-                    return "Ingen väg hittades";
-                }
-
-                return "Distansen är : " + distanceKm.get("text").getAsString()
-                        + " Tiden är: " + timeTrip.get("text").getAsString();
-
-            } else {
-
-                return "Ingen väg hittades";
+    private Map<String, String> routeParams() {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("mode", MODE);
+        params.put("origin", startPlace);
+        params.put("destination", endPlace);
+        return params;
+    }
 
 
-            }
+    public String getRouteTimeAndDist() {
+        if (!route.found()) {
+            return  "ingen väg hittade";
+        }
+        if (route.distance() == null || route.duration() == null) {
+            return "Ingen väg hittades";
         }
-        return  "ingen väg hittade";
+        return "Distansen är : " + route.distance()
+                + " Tiden är: " + route.duration();
     }
 
 
     public String getPolyline() {
-        JsonObject polylineObj = JsonParser.parseString(jSonRoute).getAsJsonObject();
-        JsonArray polyArr = polylineObj.getAsJsonArray("routes");
-        if (polyArr != null && polyArr.size() > 0) {
-            JsonObject routeTo = polyArr.get(0).getAsJsonObject();
-            JsonObject overViewLine = routeTo.getAsJsonObject("overview_polyline");
-            if (overViewLine == null) {
-                return "No polyline could be found";
-            }
-            String thePolyline = overViewLine.get("points").getAsString();
-            System.out.println("The polyline code " + thePolyline);
-            return thePolyline;
-        } else {
+        if (route.polyline() == null) {
             return "No polyline could be found";
         }
+        return route.polyline();
     }
     public String getDistance() {
-        JsonObject responseJObj = JsonParser.parseString(jSonRoute).getAsJsonObject();
-        JsonArray routesArr = responseJObj.getAsJsonArray("routes");
-        if (routesArr != null && routesArr.size() > 0) {
-            JsonObject answerArrFirst = routesArr.get(0).getAsJsonObject();
-            JsonArray legs = answerArrFirst.getAsJsonArray("legs");
-            if (legs != null && legs.size() > 0) {
-                JsonObject answerLegsArr = legs.get(0).getAsJsonObject();
-                JsonObject distanceKm = answerLegsArr.getAsJsonObject("distance");
-                if (distanceKm == null) {
-                    return null;
-                }
-                return distanceKm.get("text").getAsString();
-            }
-        }
-        return null;
+        return route.distance();
     }
     public String getDuration() {
-        JsonObject responseJObj = JsonParser.parseString(jSonRoute).getAsJsonObject();
-        JsonArray routesArr = responseJObj.getAsJsonArray("routes");
-        if (routesArr != null && routesArr.size() > 0) {
+        return route.duration();
+    }
+
+    /**
+     * The parts of a Directions answer we use: first leg's distance and duration text and
+     * the encoded overview polyline. found is false when the answer had no route at all.
+     */
+    public record Route(boolean found, String distance, String duration, String polyline) {
+        static final Route NONE = new Route(false, null, null, null);
+
+        static Route parse(String json) {
+            JsonObject responseJObj = JsonParser.parseString(json).getAsJsonObject();  //converts Json String answer to JsonObject
+            JsonArray routesArr = responseJObj.getAsJsonArray("routes");
+            if (routesArr == null || routesArr.size() == 0) {
+                return NONE;
+            }
             JsonObject answerArrFirst = routesArr.get(0).getAsJsonObject();
+
+            JsonObject overViewLine = answerArrFirst.getAsJsonObject("overview_polyline");
+            String polyline = overViewLine != null && overViewLine.has("points")
+                    ? overViewLine.get("points").getAsString()
+                    : null;
+
+            String distance = null;
+            String duration = null;
             JsonArray legs = answerArrFirst.getAsJsonArray("legs");
             if (legs != null && legs.size() > 0) {
                 JsonObject answerLegsArr = legs.get(0).getAsJsonObject();
+                JsonObject distanceKm = answerLegsArr.getAsJsonObject("distance"); //distansen
                 JsonObject timeTrip = answerLegsArr.getAsJsonObject("duration");
-                if (timeTrip == null) {
-                    return null;
-                }
-                return timeTrip.get("text").getAsString();
+                distance = distanceKm != null ? distanceKm.get("text").getAsString() : null;
+                duration = timeTrip != null ? timeTrip.get("text").getAsString() : null;
             }
+            return new Route(true, distance, duration, polyline);
         }
-        return null;
     }
 
 
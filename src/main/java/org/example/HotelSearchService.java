@@ -1,65 +1,178 @@
 package org.example;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
 import okhttp3.FormBody;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class HotelSearchService {
-    private static final String AUTH_URL = "https://test.api.amadeus.com/v1/security/oauth2/token";
-    private static final String HOTEL_SEARCH_URL = "https://test.api.amadeus.com/v2/shopping/hotel-offers";
+    private static final String AUTH_PATH = "/v1/security/oauth2/token";
+    private static final String HOTEL_SEARCH_PATH = "/v2/shopping/hotel-offers";
+    private static final Logger logger = LoggerFactory.getLogger(HotelSearchService.class);
+    private static final String MAPS_SEARCH_URL = "https://www.google.com/maps/search/?api=1&query=";
+    private static final String QUERY_ENCODE_SET = " !\"#$&'(),/:;<=>?@[]\\^`{|}~";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final Duration CALL_TIMEOUT = Duration.ofSeconds(15);
+    // tokens live about 30 minutes, the last five are spent refreshing in the background
+    private static final Duration REFRESH_AHEAD = Duration.ofMinutes(5);
 
     private final AppConfig config;
+    private final String authUrl;
+    private final String hotelSearchUrl;
     private final OkHttpClient client;
     private final ObjectMapper mapper;
-    private final Map<String, CacheEntry> hotelCache = new ConcurrentHashMap<>();
+    private final BoundedCache<String, List<HotelSummary>> hotelCache;
+    private final DiskCache.Store<List<HotelSummary>> diskHotels;
+    private final AmadeusScheduler scheduler;
+    private final AdaptiveLimiter limiter;
+    private final Metrics.Upstream offerMetrics = Metrics.upstream("amadeus-rest", "hotel-offers");
+    private final Metrics.Upstream tokenMetrics = Metrics.upstream("amadeus-rest", "token");
+    private final ExecutorService admissionExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("hotel-admission-", 0).factory());
+    private final AtomicReference<CompletableFuture<TokenCache>> tokenRefresh = new AtomicReference<>();
     private volatile TokenCache tokenCache;
 
     public HotelSearchService(AppConfig config) {
+        this(config, new AmadeusScheduler(config.amadeusRateLimit()));
+    }
+
+    public HotelSearchService(AppConfig config, AmadeusScheduler scheduler) {
+        this(config, scheduler, DiskCache.disabled());
+    }
+
+    // Share the scheduler with AmadeusService so both stay under one rate limit
+    public HotelSearchService(AppConfig config, AmadeusScheduler scheduler, DiskCache diskCache) {
         this.config = config;
+        this.authUrl = config.amadeusBaseUrl() + AUTH_PATH;
+        this.hotelSearchUrl = config.amadeusBaseUrl() + HOTEL_SEARCH_PATH;
+        this.scheduler = scheduler;
+        int maxConcurrency = Math.max(1, config.amadeusMaxConcurrency());
+        this.limiter = new AdaptiveLimiter("Hotel search", Math.max(2, maxConcurrency / 2), 1, maxConcurrency, maxConcurrency * 4);
         this.mapper = new ObjectMapper();
+        // weighed by number of hotels, so a few huge result lists cannot fill the heap
+        this.hotelCache = new BoundedCache<>("hotels", config.hotelCacheMaxHotels(), config.cacheTtl(), List::size);
+        this.diskHotels = diskCache.store("hotels", diskCache.listType(HotelSummary.class), config.cacheTtl());
+        // OkHttp runs at most 5 enqueued calls per host by default, the limiter is what bounds them here
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxConcurrency + 1);
+        dispatcher.setMaxRequestsPerHost(maxConcurrency + 1);
         this.client = new OkHttpClient.Builder()
-                .callTimeout(15, TimeUnit.SECONDS)
+                .dispatcher(dispatcher)
+                .callTimeout(CALL_TIMEOUT)
                 .connectTimeout(10, TimeUnit.SECONDS)
                 .readTimeout(15, TimeUnit.SECONDS)
                 .build();
     }
 
+    // Blocking form of searchHotelsAsync for callers that already run on their own thread
     public List<HotelSummary> searchHotels(HotelQuery query) throws IOException {
+        CompletableFuture<List<HotelSummary>> search = searchHotelsAsync(query);
+        try {
+            return search.get();
+        } catch (ExecutionException e) {
+            throw asIOException(e.getCause());
+        } catch (InterruptedException e) {
+            search.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the hotel search");
+        }
+    }
+
+    /**
+     * Hotels around the query point. Cache hits complete right away; otherwise the rate limit
+     * and concurrency waits run on a virtual thread and the HTTP calls are enqueued on OkHttp's
+     * dispatcher, so no caller thread is held for the round trip. The deadline and priority
+     * are taken from the calling thread. Cancelling the returned future stops the waits and
+     * cancels the HTTP call.
+     */
+    public CompletableFuture<List<HotelSummary>> searchHotelsAsync(HotelQuery query) {
         if (!config.hasAmadeusCredentials()) {
-            return Collections.emptyList();
+            return CompletableFuture.completedFuture(Collections.emptyList());
         }
 
         // reuse cached hotels so we do not hammer the API
-        CacheEntry cached = hotelCache.get(query.cacheKey());
-        if (cached != null && !cached.isExpired(config.cacheTtl())) {
-            return cached.results();
+        List<HotelSummary> cached = hotelCache.get(query.cacheKey());
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        // after a restart the disk tier still has what the heap lost
+        cached = diskHotels.get(query.cacheKey());
+        if (cached != null) {
+            hotelCache.put(query.cacheKey(), cached);
+            return CompletableFuture.completedFuture(cached);
         }
 
-        List<HotelSummary> fetched = fetchHotels(query);
-        hotelCache.put(query.cacheKey(), new CacheEntry(fetched, Instant.now()));
-        return fetched;
+        long deadline;
+        try {
+            deadline = callDeadline();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        AmadeusScheduler.Priority priority = AmadeusScheduler.currentPriority();
+        Cancellation cancellation = new Cancellation();
+        CompletableFuture<List<HotelSummary>> search = accessToken(priority, deadline)
+                .thenCompose(token -> fetchHotels(query, token, priority, deadline, cancellation))
+                // only a parsed 2xx answer gets here, failed searches are asked again next time
+                .thenApply(fetched -> {
+                    hotelCache.put(query.cacheKey(), fetched);
+                    diskHotels.put(query.cacheKey(), fetched);
+                    return fetched;
+                });
+        // cancelling a dependent future never reaches the stages before it, so this one passes it on
+        search.whenComplete((hotels, error) -> {
+            if (search.isCancelled()) {
+                cancellation.cancel();
+            }
+        });
+        return search;
+    }
+
+    public BoundedCache.Stats cacheStats() {
+        return hotelCache.stats();
     }
 
     // Call api to find hotels
-    private List<HotelSummary> fetchHotels(HotelQuery query) throws IOException {
-        String accessToken = ensureToken();
-        HttpUrl.Builder urlBuilder = Objects.requireNonNull(HttpUrl.parse(HOTEL_SEARCH_URL)).newBuilder()
+    private CompletableFuture<List<HotelSummary>> fetchHotels(HotelQuery query, String accessToken,
+                                                              AmadeusScheduler.Priority priority, long deadline,
+                                                              Cancellation cancellation) {
+        HttpUrl.Builder urlBuilder = Objects.requireNonNull(HttpUrl.parse(hotelSearchUrl)).newBuilder()
                 .addQueryParameter("latitude", String.valueOf(query.lat()))
                 .addQueryParameter("longitude", String.valueOf(query.lng()))
                 .addQueryParameter("radius", String.valueOf(query.radiusKm()))
@@ -81,65 +194,255 @@ public class HotelSearchService {
                 .header("Authorization", "Bearer " + accessToken)
                 .build();
 
-        try (Response response = client.newCall(request).execute()) {
+        long started = System.nanoTime();
+        return admit(cancellation, () -> {
+            awaitSchedule(AmadeusScheduler.Family.HOTEL_SHOPPING, priority, deadline);
+            return acquireSlot(deadline);
+        }, permit -> permit.complete(AdaptiveLimiter.Outcome.IGNORED)).thenCompose(permit -> send(request, deadline, cancellation, response -> {
+            if (response.code() == 429) {
+                offerMetrics.rateLimited();
+                scheduler.onRateLimited(AmadeusScheduler.Family.HOTEL_SHOPPING);
+            }
             if (!response.isSuccessful()) {
-                return Collections.emptyList();
+                permit.complete(response.code() == 429 || response.code() >= 500
+                        ? AdaptiveLimiter.Outcome.DROPPED
+                        : AdaptiveLimiter.Outcome.IGNORED);
+                // fails the search, so an error never reaches the caches as "no hotels"
+                throw new IOException("Amadeus hotel search returned " + response.code());
             }
+            List<HotelSummary> hotels = parseHotels(mapper.getFactory(),
+                    Objects.requireNonNull(response.body()).byteStream(), config.maxHotelResults());
+            permit.complete(AdaptiveLimiter.Outcome.SUCCESS);
+            return hotels;
+        }).whenComplete((hotels, error) -> {
+            // timeouts and connection errors end up here, a cancelled call says nothing about the upstream
+            permit.complete(cancellation.isCancelled()
+                    ? AdaptiveLimiter.Outcome.IGNORED
+                    : AdaptiveLimiter.Outcome.DROPPED);
+        })).whenComplete((hotels, error) -> {
+            if (cancellation.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                countTimeout(offerMetrics, error);
+            }
+            offerMetrics.record(System.nanoTime() - started, error != null);
+        });
+    }
 
-            String body = Objects.requireNonNull(response.body()).string();
-            JsonNode root = mapper.readTree(body);
-            JsonNode data = root.path("data");
-            if (!data.isArray()) {
+    /**
+     * Hotel offers response body -> summaries, read token by token straight from the stream.
+     * Only the fields HotelSummary needs are kept; everything else (rooms, policies, the offers
+     * after the first, meta) is skipped without being materialised, and reading stops once
+     * limit hotels are found. Entries without a hotel object are skipped.
+     */
+    static List<HotelSummary> parseHotels(JsonFactory json, InputStream body, int limit) throws IOException {
+        try (JsonParser parser = json.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
                 return Collections.emptyList();
             }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && "data".equals(field)) {
+                    return parseData(parser, limit);
+                }
+                parser.skipChildren();
+            }
+            return Collections.emptyList();
+        }
+    }
 
-            List<HotelSummary> summaries = new ArrayList<>();
-            for (JsonNode node : data) {
-                JsonNode hotelNode = node.path("hotel");
-                if (hotelNode.isMissingNode()) {
-                    continue;
+    private static List<HotelSummary> parseData(JsonParser parser, int limit) throws IOException {
+        List<HotelSummary> summaries = new ArrayList<>(Math.min(Math.max(limit, 0), 64));
+        JsonToken token;
+        while (summaries.size() < limit && (token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            HotelFields hotel = new HotelFields();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("hotel".equals(field) && value == JsonToken.START_OBJECT) {
+                    hotel.present = true;
+                    parseHotel(parser, hotel);
+                } else if ("offers".equals(field) && value == JsonToken.START_ARRAY) {
+                    parseFirstOffer(parser, hotel);
+                } else {
+                    parser.skipChildren();
                 }
-                double latitude = hotelNode.path("latitude").asDouble();
-                double longitude = hotelNode.path("longitude").asDouble();
-                String hotelId = hotelNode.path("hotelId").asText("");
-                String name = hotelNode.path("name").asText("Unknown Hotel");
-                String address = hotelNode.path("address").path("lines").isArray()
-                        ? String.join(", ", mapper.convertValue(hotelNode.path("address").path("lines"), List.class))
-                        : hotelNode.path("address").path("lines").asText("");
-                String cityName = hotelNode.path("address").path("cityName").asText("");
-                String rating = hotelNode.path("rating").asText("");
-
-                JsonNode offers = node.path("offers");
-                JsonNode firstOffer = offers.isArray() && offers.size() > 0 ? offers.get(0) : null;
-                String currency = firstOffer != null ? firstOffer.path("price").path("currency").asText("") : "";
-                String priceTotal = firstOffer != null ? firstOffer.path("price").path("total").asText("") : "";
-
-                String formattedAddress = address.isBlank() && cityName.isBlank()
-                        ? ""
-                        : (address.isBlank() ? cityName : address + (cityName.isBlank() ? "" : ", " + cityName));
-
-                summaries.add(new HotelSummary(
-                        hotelId,
-                        name,
-                        formattedAddress,
-                        latitude,
-                        longitude,
-                        rating,
-                        priceTotal,
-                        currency,
-                        googleMapsLink(latitude, longitude, name)
-                ));
-            }
-            return summaries;
-        }
-    }
-
-    // Check if token is expired
-    private synchronized String ensureToken() throws IOException {
-        if (tokenCache != null && !tokenCache.isExpired()) {
-            return tokenCache.accessToken();
+            }
+            if (hotel.present) {
+                summaries.add(hotel.toSummary());
+            }
+        }
+        return summaries;
+    }
+
+    private static void parseHotel(JsonParser parser, HotelFields hotel) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "hotelId" -> hotel.id = text(parser, "");
+                case "name" -> hotel.name = text(parser, "Unknown Hotel");
+                case "latitude" -> hotel.lat = number(parser);
+                case "longitude" -> hotel.lng = number(parser);
+                case "rating" -> hotel.rating = text(parser, "");
+                case "address" -> parseAddress(parser, hotel);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private static void parseAddress(JsonParser parser, HotelFields hotel) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("lines".equals(field) && value == JsonToken.START_ARRAY) {
+                StringBuilder lines = new StringBuilder();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (!lines.isEmpty()) {
+                        lines.append(", ");
+                    }
+                    lines.append(text(parser, "null"));
+                }
+                hotel.address = lines.toString();
+            } else if ("lines".equals(field)) {
+                hotel.address = text(parser, "");
+            } else if ("cityName".equals(field)) {
+                hotel.cityName = text(parser, "");
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // Price of the first offer, the other offers are skipped whole
+    private static void parseFirstOffer(JsonParser parser, HotelFields hotel) throws IOException {
+        boolean first = true;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (!first || token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                first = false;
+                continue;
+            }
+            first = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() == JsonToken.START_OBJECT && "price".equals(field)) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String priceField = parser.currentName();
+                        parser.nextToken();
+                        switch (priceField) {
+                            case "currency" -> hotel.currency = text(parser, "");
+                            case "total" -> hotel.priceTotal = text(parser, "");
+                            default -> parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    // Scalar as text like JsonNode.asText(fallback): null gives the fallback, objects and arrays ""
+    private static String text(JsonParser parser, String fallback) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return fallback;
+        }
+        if (token.isScalarValue()) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return "";
+    }
+
+    // Number or numeric string like JsonNode.asDouble(), anything else is 0
+    private static double number(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token.isNumeric() || token == JsonToken.VALUE_STRING) {
+            return parser.getValueAsDouble(0);
+        }
+        parser.skipChildren();
+        return 0;
+    }
+
+    // What the stream parser collects for one entry of data
+    private static final class HotelFields {
+        boolean present;
+        String id = "";
+        String name = "Unknown Hotel";
+        String address = "";
+        String cityName = "";
+        double lat;
+        double lng;
+        String rating = "";
+        String priceTotal = "";
+        String currency = "";
+
+        HotelSummary toSummary() {
+            String formattedAddress = address.isBlank() && cityName.isBlank()
+                    ? ""
+                    : (address.isBlank() ? cityName : address + (cityName.isBlank() ? "" : ", " + cityName));
+            return new HotelSummary(id, name, formattedAddress, lat, lng, rating, priceTotal, currency,
+                    googleMapsLink(lat, lng, name));
+        }
+    }
+
+    /*
+     * A valid token right away. Once a token is within REFRESH_AHEAD of expiry the next caller
+     * starts a background refresh and still gets the current one, so callers only wait when
+     * there is no valid token at all, and then only up to their own deadline.
+     */
+    private CompletableFuture<String> accessToken(AmadeusScheduler.Priority priority, long deadline) {
+        TokenCache token = tokenCache;
+        if (token != null && !token.isExpired()) {
+            if (token.isDueForRefresh()) {
+                refreshToken(AmadeusScheduler.Priority.BACKGROUND);
+            }
+            return CompletableFuture.completedFuture(token.accessToken());
+        }
+        return refreshToken(priority)
+                .copy()
+                .orTimeout(Math.max(1, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+                .thenApply(TokenCache::accessToken);
+    }
+
+    // Single flight: the refresh in progress, or a new one when there is none
+    private CompletableFuture<TokenCache> refreshToken(AmadeusScheduler.Priority priority) {
+        while (true) {
+            CompletableFuture<TokenCache> running = tokenRefresh.get();
+            if (running != null) {
+                return running;
+            }
+            CompletableFuture<TokenCache> refresh = new CompletableFuture<>();
+            if (tokenRefresh.compareAndSet(null, refresh)) {
+                fetchToken(priority).whenComplete((fetched, error) -> {
+                    // tokenCache is already set, so nobody starts another refresh for the same token
+                    tokenRefresh.set(null);
+                    if (error != null) {
+                        logger.warn("Amadeus token refresh failed: {}", asIOException(error).getMessage());
+                        refresh.completeExceptionally(error);
+                    } else {
+                        refresh.complete(fetched);
+                    }
+                });
+                return refresh;
+            }
         }
+    }
 
+    // The auth call; it is shared by everyone waiting, so it gets CALL_TIMEOUT instead of one request's deadline
+    private CompletableFuture<TokenCache> fetchToken(AmadeusScheduler.Priority priority) {
         // quick auth call to Amadeus, nothing fancy
         RequestBody body = new FormBody.Builder()
                 .add("grant_type", "client_credentials")
@@ -148,41 +451,228 @@ public class HotelSearchService {
                 .build();
 
         Request request = new Request.Builder()
-                .url(AUTH_URL)
+                .url(authUrl)
                 .post(body)
                 .build();
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Unable to authenticate with Amadeus API: " + response.code());
+        long deadline = System.nanoTime() + CALL_TIMEOUT.toNanos();
+        long started = System.nanoTime();
+        return admit(null, () -> {
+            awaitSchedule(AmadeusScheduler.Family.AUTH, priority, deadline);
+            return null;
+        }, null).thenCompose(ignored -> send(request, deadline, null, this::readToken)).whenComplete((token, error) -> {
+            if (error != null) {
+                countTimeout(tokenMetrics, error);
+            }
+            tokenMetrics.record(System.nanoTime() - started, error != null);
+        });
+    }
+
+    // Auth response -> token, kept in tokenCache
+    private TokenCache readToken(Response response) throws IOException {
+        if (response.code() == 429) {
+            tokenMetrics.rateLimited();
+            scheduler.onRateLimited(AmadeusScheduler.Family.AUTH);
+        }
+        if (!response.isSuccessful()) {
+            throw new IOException("Unable to authenticate with Amadeus API: " + response.code());
+        }
+
+        String json = Objects.requireNonNull(response.body()).string();
+        JsonNode node = mapper.readTree(json);
+        String token = node.path("access_token").asText("");
+        long expiresIn = node.path("expires_in").asLong(0);
+        if (token.isBlank() || expiresIn == 0) {
+            throw new IOException("Invalid token response from Amadeus API");
+        }
+        Instant now = Instant.now();
+        long lifetime = Math.max(60, expiresIn - 60);
+        Instant expiry = now.plusSeconds(lifetime);
+        Instant refreshAt = expiry.minusSeconds(Math.min(REFRESH_AHEAD.toSeconds(), lifetime / 2));
+        TokenCache fetched = new TokenCache(token, refreshAt, expiry);
+        tokenCache = fetched;
+        return fetched;
+    }
+
+    // Enqueue the call on OkHttp's dispatcher; the handler runs there with the response, which is closed after it.
+    // cancellation is null for calls that are not tied to one caller.
+    private <T> CompletableFuture<T> send(Request request, long deadlineNanos, Cancellation cancellation,
+                                          ResponseHandler<T> handler) {
+        Call call = newCall(request, deadlineNanos);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call failed, IOException e) {
+                result.completeExceptionally(e);
             }
 
-            String json = Objects.requireNonNull(response.body()).string();
-            JsonNode node = mapper.readTree(json);
-            String token = node.path("access_token").asText("");
-            long expiresIn = node.path("expires_in").asLong(0);
-            if (token.isBlank() || expiresIn == 0) {
-                throw new IOException("Invalid token response from Amadeus API");
+            @Override
+            public void onResponse(Call done, Response response) {
+                try (response) {
+                    result.complete(handler.handle(response));
+                } catch (IOException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        if (cancellation != null) {
+            // a caller giving up cancels the HTTP call too
+            cancellation.onCancel(call::cancel);
+        }
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Admission<T> {
+        T await() throws IOException;
+    }
+
+    // The rate limit and concurrency waits block, so they run on a virtual thread rather than the caller's.
+    // Cancelling interrupts the wait; what it still obtained after that goes to discard (e.g. a limiter permit).
+    private <T> CompletableFuture<T> admit(Cancellation cancellation, Admission<T> admission, Consumer<T> discard) {
+        CompletableFuture<T> admitted = new CompletableFuture<>();
+        Future<?> waiting = admissionExecutor.submit(() -> {
+            try {
+                T value = admission.await();
+                if (!admitted.complete(value) && discard != null) {
+                    discard.accept(value);
+                }
+            } catch (IOException | RuntimeException e) {
+                admitted.completeExceptionally(e);
             }
-            Instant expiry = Instant.now().plusSeconds(Math.max(60, expiresIn - 60));
-            tokenCache = new TokenCache(token, expiry);
-            return token;
+        });
+        if (cancellation != null) {
+            cancellation.onCancel(() -> {
+                waiting.cancel(true);
+                admitted.completeExceptionally(new CancellationException("Hotel search cancelled"));
+            });
         }
+        return admitted;
     }
 
-    // Create link for google maps
-    private String googleMapsLink(double lat, double lng, String name) {
+    // Cancel hooks of one search, run once when the caller's future is cancelled (or right away after that)
+    private static final class Cancellation {
+        private final Queue<Runnable> hooks = new ConcurrentLinkedQueue<>();
+        private volatile boolean cancelled;
+
+        void onCancel(Runnable hook) {
+            hooks.add(hook);
+            if (cancelled) {
+                runHooks();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            runHooks();
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void runHooks() {
+            Runnable hook;
+            while ((hook = hooks.poll()) != null) {
+                hook.run();
+            }
+        }
+    }
+
+    // OkHttp reports its call timeout as an InterruptedIOException, the scheduler and limiter wrap a TimeoutException
+    private static void countTimeout(Metrics.Upstream metrics, Throwable error) {
+        Throwable e = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (e instanceof InterruptedIOException || e.getCause() instanceof TimeoutException) {
+            metrics.timeout();
+        }
+    }
+
+    // Failure of a search future as the IOException searchHotels has always thrown
+    private static IOException asIOException(Throwable error) {
+        Throwable e = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (e instanceof IOException io) {
+            return io;
+        }
+        if (e instanceof TimeoutException) {
+            return new InterruptedIOException("Timed out waiting for an Amadeus token");
+        }
+        return new IOException(e.getMessage(), e);
+    }
+
+    // CALL_TIMEOUT from now, or earlier when the request deadline is closer (nanoTime)
+    private static long callDeadline() throws IOException {
+        Deadline deadline = Deadline.currentOr(CALL_TIMEOUT);
+        if (deadline.isExpired()) {
+            throw new InterruptedIOException("Request deadline passed before the hotel search call");
+        }
+        return deadline.capNanos(CALL_TIMEOUT);
+    }
+
+    // OkHttp call that gives up at the deadline instead of after the client's fixed call timeout
+    private Call newCall(Request request, long deadlineNanos) {
+        Call call = client.newCall(request);
+        call.timeout().timeout(Math.max(1, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        return call;
+    }
+
+    // Wait for a concurrency slot, shed with an IOException when the limit and its queue are full
+    private AdaptiveLimiter.Permit acquireSlot(long deadlineNanos) throws IOException {
+        try {
+            return limiter.acquire(deadlineNanos);
+        } catch (TimeoutException e) {
+            throw new IOException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a hotel search slot");
+        }
+    }
+
+    // Wait for a rate limit token, at most until the call deadline
+    private void awaitSchedule(AmadeusScheduler.Family family, AmadeusScheduler.Priority priority,
+                               long deadlineNanos) throws IOException {
+        try {
+            scheduler.acquire(family, priority, deadlineNanos);
+        } catch (TimeoutException e) {
+            throw new IOException(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for an Amadeus token");
+        }
+    }
+
+    // Create link for google maps; encoded by hand because building an HttpUrl per hotel cost more than parsing it
+    static String googleMapsLink(double lat, double lng, String name) {
         String query = name == null || name.isBlank()
                 ? lat + "," + lng
                 : name + " @" + lat + "," + lng;
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse("https://www.google.com/maps/search/"))
-                .newBuilder()
-                .addQueryParameter("api", "1")
-                .addQueryParameter("query", query)
-                .build();
+        StringBuilder url = new StringBuilder(MAPS_SEARCH_URL.length() + query.length() + 16);
+        url.append(MAPS_SEARCH_URL);
+        appendQueryComponent(url, query);
         return url.toString();
     }
 
+    // Percent-encodes like HttpUrl.Builder.addQueryParameter: controls, non-ASCII, '%', '+' and QUERY_ENCODE_SET
+    private static void appendQueryComponent(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); ) {
+            int codePoint = value.codePointAt(i);
+            int length = Character.charCount(codePoint);
+            if (codePoint < 0x20 || codePoint >= 0x7f || codePoint == '%' || codePoint == '+'
+                    || QUERY_ENCODE_SET.indexOf(codePoint) >= 0) {
+                for (byte b : value.substring(i, i + length).getBytes(StandardCharsets.UTF_8)) {
+                    out.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+                }
+            } else {
+                out.append((char) codePoint);
+            }
+            i += length;
+        }
+    }
+
     public record HotelSummary(
             String id,
             String name,
@@ -203,15 +693,13 @@ public class HotelSearchService {
         }
     }
 
-    private record CacheEntry(List<HotelSummary> results, Instant storedAt) {
-        boolean isExpired(java.time.Duration ttl) {
-            return storedAt.plus(ttl).isBefore(Instant.now());
-        }
-    }
-
-    private record TokenCache(String accessToken, Instant expiresAt) {
+    private record TokenCache(String accessToken, Instant refreshAt, Instant expiresAt) {
         boolean isExpired() {
             return Instant.now().isAfter(expiresAt);
         }
+
+        boolean isDueForRefresh() {
+            return Instant.now().isAfter(refreshAt);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram: every power of two of
+ * microseconds is split into SUB_BUCKETS linear buckets, so any value is known to within
+ * about 12% from 1µs up to several hours, in a fixed array. Recording is two atomic adds and
+ * never allocates. Quantiles are read over the current and the previous window, so they
+ * follow the last one to two minutes; count and sum cover the whole process lifetime.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // 2^36µs is about 19 hours, anything slower lands in the last bucket
+    private static final int MAX_EXPONENT = 36;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray[] windows = {new AtomicLongArray(BUCKETS), new AtomicLongArray(BUCKETS)};
+    private volatile int current;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1_000);
+        windows[current].incrementAndGet(index(micros));
+        count.increment();
+        sumNanos.add(Math.max(0, nanos));
+    }
+
+    // Start a new window; the oldest one is cleared. A sample racing with the clear may be lost.
+    void rotate() {
+        int next = current ^ 1;
+        AtomicLongArray stale = windows[next];
+        for (int i = 0; i < BUCKETS; i++) {
+            stale.set(i, 0);
+        }
+        current = next;
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public double sumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+
+    // Upper bound in seconds of the bucket holding each quantile, NaN when the window is empty
+    public double[] quantileSeconds(double... quantiles) {
+        long[] merged = new long[BUCKETS];
+        long total = 0;
+        for (AtomicLongArray window : windows) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long n = window.get(i);
+                merged[i] += n;
+                total += n;
+            }
+        }
+        double[] result = new double[quantiles.length];
+        for (int q = 0; q < quantiles.length; q++) {
+            if (total == 0) {
+                result[q] = Double.NaN;
+                continue;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantiles[q] * total));
+            long seen = 0;
+            int bucket = 0;
+            while (bucket < BUCKETS - 1 && (seen += merged[bucket]) < rank) {
+                bucket++;
+            }
+            result[q] = upperBoundMicros(bucket) / 1e6;
+        }
+        return result;
+    }
+
+    // 0..7µs one bucket each, then SUB_BUCKETS per power of two
+    static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundMicros(int index) {
+        if (index < SUB_BUCKETS) {
+            return index + 1;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        int sub = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub + 1) << shift;
+    }
+}
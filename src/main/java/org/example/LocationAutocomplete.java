@@ -0,0 +1,355 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Prefix index behind the /search/locations autocomplete. Every word of a city or airport
+ * name and every IATA code is a path in a trie, with accents folded so "malmo" finds Malmö.
+ * Each node keeps its most important entries, so a lookup is one walk down the letters of
+ * the query. Filled from the bundled datasets and from what Amadeus answers for keywords
+ * the index could not answer itself.
+ */
+public class LocationAutocomplete {
+    private static final Logger logger = LoggerFactory.getLogger(LocationAutocomplete.class);
+    private static final String CITIES_RESOURCE = "/data/cities.csv";
+    // entries kept per trie node, more than one page so multi-word filtering still has candidates
+    private static final int TOP_PER_NODE = 16;
+    // entries learned from Amadeus, bounded so odd keywords cannot grow the index forever
+    private static final int MAX_LEARNED = 5000;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9]+");
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Node root = new Node();
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, List<Entry>> byCode = new HashMap<>();
+    // kind + code (or name) of every entry, so the same place is not added twice
+    private final Set<String> keys = new HashSet<>();
+    private int learned;
+
+    public enum Kind {
+        CITY,
+        AIRPORT
+    }
+
+    // Cities from the bundled dataset and every airport of the airport index
+    public static LocationAutocomplete load(AirportIndex airports) {
+        LocationAutocomplete index = new LocationAutocomplete();
+        try (InputStream in = LocationAutocomplete.class.getResourceAsStream(CITIES_RESOURCE)) {
+            if (in == null) {
+                logger.warn("City dataset {} not found, autocomplete only knows airports", CITIES_RESOURCE);
+            } else {
+                index.addCities(in);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to load city dataset, autocomplete only knows airports: {}", e.getMessage());
+        }
+        for (AirportIndex.Airport airport : airports.all()) {
+            index.add(Kind.AIRPORT, List.of(airport.name()), airport.iata(), airport.lat(), airport.lng(),
+                    importance(Kind.AIRPORT, airport.size()));
+        }
+        logger.info("Autocomplete index holds {} locations", index.size());
+        return index;
+    }
+
+    // Columns: iata,size,lat,lng,name with aliases in name separated by |
+    private void addCities(InputStream in) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#") || line.startsWith("iata,")) {
+                    continue;
+                }
+                String[] parts = line.split(",", 5);
+                if (parts.length < 5) {
+                    continue;
+                }
+                try {
+                    double lat = Double.parseDouble(parts[2].trim());
+                    double lng = Double.parseDouble(parts[3].trim());
+                    List<String> names = Arrays.stream(parts[4].split("\\|")).map(String::trim)
+                            .filter(name -> !name.isEmpty()).toList();
+                    if (!names.isEmpty()) {
+                        add(Kind.CITY, names, parts[0].trim().toUpperCase(Locale.ROOT), lat, lng,
+                                importance(Kind.CITY, parts[1].trim()));
+                    }
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+    }
+
+    // Remember a location Amadeus returned; cityName makes airports findable by their city
+    public void learn(Kind kind, String name, String iataCode, String cityName, Double lat, Double lng) {
+        if (name == null || name.isBlank()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (learned >= MAX_LEARNED) {
+                return;
+            }
+            List<String> names = cityName == null || cityName.isBlank() ? List.of(name) : List.of(name, cityName);
+            if (add(kind, names, iataCode, lat, lng, importance(kind, "medium"))) {
+                learned++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean add(Kind kind, List<String> names, String iataCode, Double lat, Double lng, int importance) {
+        String code = iataCode == null || iataCode.isBlank() ? null : iataCode.toUpperCase(Locale.ROOT);
+        lock.writeLock().lock();
+        try {
+            if (!keys.add(kind + "|" + (code != null ? code : normalize(names.get(0))))) {
+                return false;
+            }
+            Set<String> tokens = new LinkedHashSet<>();
+            for (String name : names) {
+                tokens.addAll(tokenize(name));
+            }
+            if (code != null) {
+                tokens.add(code.toLowerCase(Locale.ROOT));
+            }
+            Entry entry = new Entry(entries.size(), names.get(0), code, lat, lng, importance, tokens.toArray(String[]::new));
+            entries.add(entry);
+            if (code != null) {
+                byCode.computeIfAbsent(code, c -> new ArrayList<>(2)).add(entry);
+            }
+            for (String token : entry.tokens()) {
+                Node node = root;
+                for (int i = 0; i < token.length(); i++) {
+                    node = node.childOrCreate(token.charAt(i));
+                    node.offer(entry, entries);
+                }
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Up to limit locations where every word of the query starts a word of the name (or is
+     * the code). Code matches come first, then whole-word matches, then cities and large
+     * airports before small ones.
+     */
+    public List<Suggestion> search(String query, int limit) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            // the rarest word gives the shortest candidate list
+            Node narrowest = null;
+            for (String word : words) {
+                Node node = find(word);
+                if (node == null) {
+                    narrowest = null;
+                    break;
+                }
+                if (narrowest == null || node.count < narrowest.count) {
+                    narrowest = node;
+                }
+            }
+            List<Entry> candidates = new ArrayList<>();
+            if (words.size() == 1) {
+                candidates.addAll(byCode.getOrDefault(words.get(0).toUpperCase(Locale.ROOT), List.of()));
+            }
+            if (narrowest != null) {
+                for (int id : narrowest.top) {
+                    candidates.add(entries.get(id));
+                }
+            }
+
+            List<Suggestion> matches = new ArrayList<>();
+            for (Entry entry : candidates) {
+                if (matchesAll(entry, words)) {
+                    matches.add(new Suggestion(entry.name(), entry.iataCode(), entry.lat(), entry.lng(),
+                            matchLevel(entry, words), entry.importance()));
+                }
+            }
+            matches.sort(Comparator.comparingInt(Suggestion::match).reversed()
+                    .thenComparing(Comparator.comparingInt(Suggestion::importance).reversed())
+                    .thenComparingInt(s -> s.name().length()));
+
+            // the same code as a city and an airport shows up once, the higher ranked one wins
+            Set<String> seen = new HashSet<>();
+            List<Suggestion> result = new ArrayList<>(limit);
+            for (Suggestion match : matches) {
+                if (seen.add(match.iataCode() != null ? match.iataCode() : match.name()) && result.size() < limit) {
+                    result.add(match);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Lower case without accents, so "Zürich", "zurich" and "ZURICH" are the same key
+    public static String normalize(String text) {
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        // letters NFD does not split into base letter + accent
+        return folded.replace("ø", "o").replace("æ", "ae").replace("ß", "ss")
+                .replace("ł", "l").replace("đ", "d").replace("ı", "i");
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : SEPARATORS.split(normalize(text))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private Node find(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    private static boolean matchesAll(Entry entry, List<String> words) {
+        for (String word : words) {
+            boolean found = false;
+            for (String token : entry.tokens()) {
+                if (token.startsWith(word)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 2 when the query is the code, 1 when every word of it is a whole word of the name, else 0
+    private static int matchLevel(Entry entry, List<String> words) {
+        if (words.size() == 1 && words.get(0).equalsIgnoreCase(entry.iataCode())) {
+            return 2;
+        }
+        for (String word : words) {
+            if (!Arrays.asList(entry.tokens()).contains(word)) {
+                return 0;
+            }
+        }
+        return 1;
+    }
+
+    private static int importance(Kind kind, String size) {
+        boolean large = "large".equalsIgnoreCase(size);
+        if (kind == Kind.CITY) {
+            return large ? 4 : 2;
+        }
+        return large ? 3 : 1;
+    }
+
+    public record Suggestion(String name, String iataCode, Double lat, Double lng, int match, int importance) {
+        public boolean exact() {
+            return match > 0;
+        }
+    }
+
+    private record Entry(int id, String name, String iataCode, Double lat, Double lng, int importance, String[] tokens) {
+    }
+
+    // Children in sorted parallel arrays, top holds entry ids, most important first
+    private static final class Node {
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private int[] top = new int[0];
+        // entries below this node, each counted once however many of its words pass through
+        private int count;
+        private int lastEntry = -1;
+
+        Node child(char label) {
+            int pos = Arrays.binarySearch(labels, label);
+            return pos >= 0 ? children[pos] : null;
+        }
+
+        Node childOrCreate(char label) {
+            int pos = Arrays.binarySearch(labels, label);
+            if (pos >= 0) {
+                return children[pos];
+            }
+            int insert = -pos - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            newLabels[insert] = label;
+            newChildren[insert] = new Node();
+            System.arraycopy(labels, insert, newLabels, insert + 1, labels.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[insert];
+        }
+
+        void offer(Entry entry, List<Entry> entries) {
+            if (lastEntry == entry.id()) {
+                return;
+            }
+            lastEntry = entry.id();
+            count++;
+            int pos = top.length;
+            while (pos > 0 && ranksBefore(entry, entries.get(top[pos - 1]))) {
+                pos--;
+            }
+            if (pos >= TOP_PER_NODE) {
+                return;
+            }
+            int size = Math.min(TOP_PER_NODE, top.length + 1);
+            int[] newTop = new int[size];
+            System.arraycopy(top, 0, newTop, 0, pos);
+            newTop[pos] = entry.id();
+            System.arraycopy(top, pos, newTop, pos + 1, size - pos - 1);
+            top = newTop;
+        }
+
+        private static boolean ranksBefore(Entry a, Entry b) {
+            if (a.importance() != b.importance()) {
+                return a.importance() > b.importance();
+            }
+            return a.name().length() < b.name().length();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package org.example;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide latency and outcome metrics, served in the Prometheus text format on /metrics.
+ * Recorders are looked up once per operation name and then only touch atomics, so recording
+ * does not allocate. Upstream recorders are per upstream and operation (Amadeus SDK operations,
+ * the hotel REST calls, Google paths), route recorders per Javalin endpoint.
+ */
+public final class Metrics {
+    private static final String PREFIX = "tripcompass_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final long WINDOW_SECONDS = 60;
+
+    // upstream -> operation -> recorder, sorted so the output is stable
+    private static final Map<String, Map<String, Upstream>> upstreams = new ConcurrentSkipListMap<>();
+    // method -> endpoint path -> recorder
+    private static final Map<String, Map<String, Route>> routes = new ConcurrentSkipListMap<>();
+    private static final ScheduledExecutorService rotation = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "metrics-rotation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        rotation.scheduleAtFixedRate(Metrics::rotate, WINDOW_SECONDS, WINDOW_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private Metrics() {
+    }
+
+    // Recorder for one upstream operation, e.g. ("amadeus", "Flight offers") or ("google", "directions/json")
+    public static Upstream upstream(String upstream, String operation) {
+        Map<String, Upstream> operations = upstreams.get(upstream);
+        if (operations == null) {
+            operations = upstreams.computeIfAbsent(upstream, u -> new ConcurrentSkipListMap<>());
+        }
+        Upstream recorder = operations.get(operation);
+        return recorder != null ? recorder : operations.computeIfAbsent(operation, op -> new Upstream());
+    }
+
+    // Recorder for one Javalin endpoint; path is the route template, not the request path
+    public static Route route(String method, String path) {
+        Map<String, Route> paths = routes.get(method);
+        if (paths == null) {
+            paths = routes.computeIfAbsent(method, m -> new ConcurrentSkipListMap<>());
+        }
+        Route recorder = paths.get(path);
+        return recorder != null ? recorder : paths.computeIfAbsent(path, p -> new Route());
+    }
+
+    public static final class Upstream {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder rateLimited = new LongAdder();
+
+        public void record(long nanos, boolean failed) {
+            latency.record(nanos);
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        public void retry() {
+            retries.increment();
+        }
+
+        public void timeout() {
+            timeouts.increment();
+        }
+
+        public void rateLimited() {
+            rateLimited.increment();
+        }
+    }
+
+    public static final class Route {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder clientErrors = new LongAdder();
+        private final LongAdder serverErrors = new LongAdder();
+
+        public void record(long nanos, int status) {
+            latency.record(nanos);
+            if (status >= 500) {
+                serverErrors.increment();
+            } else if (status >= 400) {
+                clientErrors.increment();
+            }
+        }
+    }
+
+    private static void rotate() {
+        upstreams.values().forEach(operations -> operations.values().forEach(u -> u.latency.rotate()));
+        routes.values().forEach(paths -> paths.values().forEach(r -> r.latency.rotate()));
+    }
+
+    /**
+     * Everything in the Prometheus text exposition format (0.0.4). Latencies are summaries with
+     * quantiles over the last one to two minutes; caches report the counters of their stats.
+     */
+    public static String scrape(List<BoundedCache.Stats> caches, DiskCache.Stats disk) {
+        StringBuilder out = new StringBuilder(8192);
+
+        header(out, "upstream_request_seconds", "summary",
+                "Upstream call latency as the caller sees it, retries and queueing included");
+        upstreams.forEach((upstream, operations) -> operations.forEach((operation, u) ->
+                summary(out, "upstream_request_seconds", u.latency,
+                        "upstream", upstream, "operation", operation)));
+        upstreamCounter(out, "upstream_errors_total", "Upstream calls that failed after all attempts", u -> u.errors);
+        upstreamCounter(out, "upstream_retries_total", "Extra attempts made after a failed one", u -> u.retries);
+        upstreamCounter(out, "upstream_timeouts_total", "Attempts that ran out of time", u -> u.timeouts);
+        upstreamCounter(out, "upstream_rate_limited_total", "Attempts answered with 429", u -> u.rateLimited);
+
+        header(out, "http_request_seconds", "summary", "Time to handle a request, per endpoint");
+        routes.forEach((method, paths) -> paths.forEach((path, r) ->
+                summary(out, "http_request_seconds", r.latency, "method", method, "route", path)));
+        header(out, "http_errors_total", "counter", "Responses with a 4xx or 5xx status, per endpoint");
+        routes.forEach((method, paths) -> paths.forEach((path, r) -> {
+            sample(out, "http_errors_total", r.clientErrors.sum(), "method", method, "route", path, "class", "4xx");
+            sample(out, "http_errors_total", r.serverErrors.sum(), "method", method, "route", path, "class", "5xx");
+        }));
+
+        header(out, "cache_hits_total", "counter", "Cache lookups answered from the cache");
+        caches.forEach(s -> sample(out, "cache_hits_total", s.hits(), "cache", s.name()));
+        sample(out, "cache_hits_total", disk.hits(), "cache", "disk");
+        header(out, "cache_misses_total", "counter", "Cache lookups that had to go upstream");
+        caches.forEach(s -> sample(out, "cache_misses_total", s.misses(), "cache", s.name()));
+        sample(out, "cache_misses_total", disk.misses(), "cache", "disk");
+        header(out, "cache_evictions_total", "counter", "Entries dropped to stay within the cache size");
+        caches.forEach(s -> sample(out, "cache_evictions_total", s.evictions(), "cache", s.name()));
+        header(out, "cache_entries", "gauge", "Entries currently cached");
+        caches.forEach(s -> sample(out, "cache_entries", s.entries(), "cache", s.name()));
+        sample(out, "cache_entries", disk.entries(), "cache", "disk");
+        header(out, "disk_cache_bytes", "gauge", "Bytes used by the disk cache segments");
+        sample(out, "disk_cache_bytes", disk.bytes());
+        return out.toString();
+    }
+
+    private interface CounterField {
+        LongAdder of(Upstream upstream);
+    }
+
+    private static void upstreamCounter(StringBuilder out, String name, String help, CounterField field) {
+        header(out, name, "counter", help);
+        upstreams.forEach((upstream, operations) -> operations.forEach((operation, u) ->
+                sample(out, name, field.of(u).sum(), "upstream", upstream, "operation", operation)));
+    }
+
+    private static void summary(StringBuilder out, String name, LatencyHistogram histogram, String... labels) {
+        double[] values = histogram.quantileSeconds(QUANTILES);
+        for (int i = 0; i < QUANTILES.length; i++) {
+            out.append(PREFIX).append(name);
+            labels(out, labels, "quantile", Double.toString(QUANTILES[i]));
+            out.append(' ').append(format(values[i])).append('\n');
+        }
+        out.append(PREFIX).append(name).append("_sum");
+        labels(out, labels, null, null);
+        out.append(' ').append(format(histogram.sumSeconds())).append('\n');
+        out.append(PREFIX).append(name).append("_count");
+        labels(out, labels, null, null);
+        out.append(' ').append(histogram.count()).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, long value, String... labels) {
+        out.append(PREFIX).append(name);
+        labels(out, labels, null, null);
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void labels(StringBuilder out, String[] labels, String extraName, String extraValue) {
+        if (labels.length == 0 && extraName == null) {
+            return;
+        }
+        out.append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            label(out, labels[i], labels[i + 1]);
+        }
+        if (extraName != null) {
+            if (labels.length > 0) {
+                out.append(',');
+            }
+            label(out, extraName, extraValue);
+        }
+        out.append('}');
+    }
+
+    // Label values escape backslash, double quote and newline
+    private static void label(StringBuilder out, String name, String value) {
+        out.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> out.append("\\\\");
+                case '"' -> out.append("\\\"");
+                case '\n' -> out.append("\\n");
+                default -> out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Status and body of one endpoint answer. The GET handlers send it as their response,
+ * /batch collects several of them into one. A String body is plain text, RawJson is
+ * JSON that is already serialized (Gson output, Google responses), anything else goes
+ * through the JSON mapper. Headers are only sent by the GET handlers, /batch keeps the body.
+ */
+public record Reply(int status, Object body, Map<String, String> headers) {
+
+    public Reply(int status, Object body) {
+        this(status, body, Map.of());
+    }
+
+    public static Reply ok(Object body) {
+        return new Reply(200, body);
+    }
+
+    public static Reply rawJson(int status, String json) {
+        return new Reply(status, new RawJson(json));
+    }
+
+    // 503 for an upstream whose circuit is open, the body repeats Retry-After for /batch
+    public static Reply unavailable(CircuitOpenException e) {
+        return new Reply(503, Map.of(
+                "error", "Upstream service unavailable",
+                "message", e.getMessage(),
+                "retryAfterSeconds", e.retryAfterSeconds()
+        ), Map.of(Header.RETRY_AFTER, String.valueOf(e.retryAfterSeconds())));
+    }
+
+    public void send(Context ctx) {
+        ctx.status(status);
+        headers.forEach(ctx::header);
+        if (body instanceof RawJson raw) {
+            ctx.contentType("application/json").result(raw.json());
+        } else if (body instanceof String text) {
+            ctx.result(text);
+        } else {
+            ctx.json(body);
+        }
+    }
+
+    // Written as is when the reply is part of a bigger JSON document
+    public record RawJson(String json) implements JsonSerializable {
+        @Override
+        public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeRawValue(json);
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer)
+                throws IOException {
+            serialize(gen, serializers);
+        }
+    }
+}
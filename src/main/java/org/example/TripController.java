@@ -3,24 +3,37 @@ package org.example;
 import com.amadeus.exceptions.ResponseException;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import io.github.cdimascio.dotenv.Dotenv;
 import io.javalin.Javalin;
-import org.example.HotelSearchService.HotelSummary;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
+import io.javalin.http.sse.SseClient;
+import io.javalin.http.sse.SseHandler;
 import org.example.GoogleMaps.GoogleJavalin;
+import org.example.GoogleMaps.GoogleMapsClient;
 import org.example.GoogleMaps.MashupJavalin;
+import org.example.GoogleMaps.RouteCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 
 
@@ -41,23 +54,70 @@ public class TripController {
     private static final boolean AMADEUS_ENABLED = AMADEUS_API_KEY != null && !AMADEUS_API_KEY.isBlank()
             && AMADEUS_API_SECRET != null && !AMADEUS_API_SECRET.isBlank();
 
-    // Service instances
+    // Second cache tier on disk, opened first so the services start warm
+    private static final DiskCache diskCache = DiskCache.open(config.diskCacheDir(), config.diskCacheMaxBytes());
+    // one geocode cache for the Amadeus and the Google geocoding
+    private static final GeocodeCache geocodeCache = new GeocodeCache(diskCache);
+
+    // Service instances, both Amadeus clients share one rate limit
+    private static final AmadeusScheduler amadeusScheduler = new AmadeusScheduler(config.amadeusRateLimit());
     private static final AmadeusService amadeusService = AMADEUS_ENABLED
-            ? new AmadeusService(AMADEUS_API_KEY, AMADEUS_API_SECRET)
+            ? new AmadeusService(AMADEUS_API_KEY, AMADEUS_API_SECRET, AirportIndex.load(config.airportsFile()),
+                    config.amadeusVirtualThreads(), config.amadeusMaxConcurrency(), amadeusScheduler, geocodeCache,
+                    config.amadeusBaseUrl())
             : null;
     private static final HotelSearchService hotelSearchService = AMADEUS_ENABLED
-            ? new HotelSearchService(config)
+            ? new HotelSearchService(config, amadeusScheduler, diskCache)
+            : null;
+    // airline names for the flight results, preloaded and refreshed in the background
+    private static final AirlineDirectory airlineDirectory = amadeusService != null
+            ? new AirlineDirectory(amadeusService::getAirlineNames, diskCache)
             : null;
     private static final TripInfoService tripInfoService = amadeusService != null
-            ? new TripInfoService(amadeusService, hotelSearchService)
+            ? new TripInfoService(amadeusService, hotelSearchService, airlineDirectory)
             : null;
 
+    // Response time budgets, every upstream call and retry of a request is sized from what is left
+    private static final Duration TRIP_INFO_BUDGET = Duration.ofSeconds(25);
+    private static final Duration SEARCH_BUDGET = Duration.ofSeconds(20);
+    private static final Duration AUTOCOMPLETE_BUDGET = Duration.ofSeconds(5);
+
+    private static final String EVENT_STREAM = "text/event-stream";
+    private static final Duration SSE_HEARTBEAT = Duration.ofSeconds(2);
+    // writes the keep-alive comments of open /trip-info/stream connections
+    private static final ScheduledExecutorService sseHeartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sse-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Run the handler with a request deadline that the services pick up
+    private static Handler withDeadline(Duration budget, Handler handler) {
+        return ctx -> Deadline.after(budget).call(() -> {
+            handler.handle(ctx);
+            return null;
+        });
+    }
+
+    // Latency per endpoint by its route template; static files and unknown paths share "other"
+    private static void recordRequest(Context ctx, Float executionTimeMs) {
+        String route = ctx.handlerType() == HandlerType.BEFORE ? "other" : ctx.endpointHandlerPath();
+        Metrics.route(ctx.method().name(), route)
+                .record((long) (executionTimeMs * 1_000_000L), ctx.statusCode());
+    }
+
+    private static final Reply AMADEUS_NOT_CONFIGURED = new Reply(503, Map.of(
+            "error", "Amadeus API not configured",
+            "message", "Set AMADEUS_API_KEY and AMADEUS_API_SECRET to enable travel search endpoints."
+    ));
+
+    private static boolean amadeusConfigured() {
+        return AMADEUS_ENABLED && amadeusService != null;
+    }
+
     private static boolean ensureAmadeusConfigured(Context ctx) {
-        if (!AMADEUS_ENABLED || amadeusService == null) {
-            ctx.status(503).json(Map.of(
-                    "error", "Amadeus API not configured",
-                    "message", "Set AMADEUS_API_KEY and AMADEUS_API_SECRET to enable travel search endpoints."
-            ));
+        if (!amadeusConfigured()) {
+            AMADEUS_NOT_CONFIGURED.send(ctx);
             return false;
         }
         return true;
@@ -72,6 +132,7 @@ public class TripController {
                 staticFileConfig.location = io.javalin.http.staticfiles.Location.CLASSPATH;
             });
             config.plugins.enableCors(cors -> cors.add(it -> it.anyHost()));
+            config.requestLogger.http(TripController::recordRequest);
         }).start(7000);
 
         if (!AMADEUS_ENABLED) {
@@ -88,19 +149,49 @@ public class TripController {
             }
         });
 
-        // Other endpoints kept as before
-        app.get("/search/flights", TripController::handleFlightSearch);
-        app.get("/search/nearby", TripController::handleNearbySearch);
-        app.get("/search/locations", TripController::handleLocationSearch);
+        // one Directions cache for every route endpoint
+        RouteCache routeCache = new RouteCache(config.routeCachePrecision(), config.routeCacheMaxRoutes(),
+                config.routeCacheTtl(), diskCache);
 
-        // New: delegate to TripInfoService
-        app.get("/trip-info", TripController::handleTripInfo);
+        app.get("/cache/stats", ctx -> ctx.json(hotelSearchService != null
+                ? List.of(hotelSearchService.cacheStats(), routeCache.stats(), geocodeCache.stats(), diskCache.stats())
+                : List.of(routeCache.stats(), geocodeCache.stats(), diskCache.stats())));
+        // latencies, retries, timeouts, 429s and cache hit rates for Prometheus
+        app.get("/metrics", ctx -> {
+            List<BoundedCache.Stats> caches = new ArrayList<>(List.of(routeCache.stats(), geocodeCache.stats()));
+            if (hotelSearchService != null) {
+                caches.add(0, hotelSearchService.cacheStats());
+            }
+            ctx.contentType("text/plain; version=0.0.4; charset=utf-8")
+                    .result(Metrics.scrape(caches, diskCache.stats()));
+        });
+
+        // Other endpoints kept as before, each with its own response time budget
+        app.get("/search/flights", withDeadline(SEARCH_BUDGET, TripController::handleFlightSearch));
+        app.get("/search/nearby", withDeadline(SEARCH_BUDGET, TripController::handleNearbySearch));
+        app.get("/search/locations", withDeadline(AUTOCOMPLETE_BUDGET, TripController::handleLocationSearch));
 
-        app.get("/nearby-airports", TripController::handleNearbyAirports);
-        GoogleJavalin googleJavalin = new GoogleJavalin(config);
+        // New: delegate to TripInfoService
+        app.get("/trip-info", withDeadline(TRIP_INFO_BUDGET, TripController::handleTripInfo));
+        app.get("/trip-info/stream", withDeadline(TRIP_INFO_BUDGET, TripController::handleTripInfoStream));
+
+        app.get("/nearby-airports", withDeadline(AUTOCOMPLETE_BUDGET, TripController::handleNearbyAirports));
+        // one pooled client for every Google Maps call
+        GoogleMapsClient mapsClient = new GoogleMapsClient(config.googleMapsApiKey().orElse(""), config.googleMapsBaseUrl(),
+                config.googleConnectTimeout(), config.googleRequestTimeout());
+        GoogleJavalin googleJavalin = new GoogleJavalin(config, mapsClient, routeCache);
         googleJavalin.registerRoutes(app);
 
-        MashupJavalin mashupJavalin = new MashupJavalin(config, amadeusService);
+        // several of the GET endpoints in one round trip, identical sub-requests run once
+        Batch batch = new Batch(Map.of(
+                "/nearby-airports", param -> CompletableFuture.completedFuture(nearbyAirports(param)),
+                "/search/nearby", param -> CompletableFuture.completedFuture(nearbySearch(param)),
+                "/search/flights", param -> CompletableFuture.completedFuture(flightSearch(param)),
+                "/places/nearby", googleJavalin::placesNearby
+        ));
+        app.post("/batch", withDeadline(SEARCH_BUDGET, batch::handle));
+
+        MashupJavalin mashupJavalin = new MashupJavalin(config, amadeusService, mapsClient, routeCache, geocodeCache);
         mashupJavalin.flightsAndPolyline(app);
         mashupJavalin.hotelsAndSights(app);
         mashupJavalin.distToHotel(app);
@@ -117,6 +208,107 @@ public class TripController {
      */
     private static void handleTripInfo(Context ctx) {
         if (!ensureAmadeusConfigured(ctx)) return;
+        try {
+            TripInfoRequest request = parseTripInfoRequest(ctx);
+            if (request == null) return;
+            ctx.json(tripInfo(request, TripInfoService.Progress.NONE));
+        } catch (Exception e) {
+            TripInfoError error = tripInfoError(e);
+            error.send(ctx);
+        }
+    }
+
+    /**
+     * Handle /trip-info/stream route: same parameters and answer as /trip-info, sent as
+     * Server-Sent Events while the parts finish (airports, hotels, flights, then done).
+     * Errors found before the stream opens keep their HTTP status, later ones arrive
+     * as a failure event. The work is cancelled when the client goes away.
+     */
+    private static void handleTripInfoStream(Context ctx) throws Exception {
+        if (!ensureAmadeusConfigured(ctx)) return;
+        // Javalin only opens the stream for exactly this Accept header, as EventSource sends it
+        if (!EVENT_STREAM.equals(ctx.header(Header.ACCEPT))) {
+            ctx.status(406).json(Map.of(
+                    "error", "Send Accept: " + EVENT_STREAM
+            ));
+            return;
+        }
+        TripInfoRequest request;
+        try {
+            request = parseTripInfoRequest(ctx);
+        } catch (Exception e) {
+            TripInfoError error = tripInfoError(e);
+            error.send(ctx);
+            return;
+        }
+        if (request == null) return;
+        // the events are sent from Javalin's async thread, which does not see this thread's deadline
+        Deadline deadline = Deadline.currentOr(TRIP_INFO_BUDGET);
+        new SseHandler(0, client -> streamTripInfo(client, request, deadline)).handle(ctx);
+    }
+
+    private static void streamTripInfo(SseClient client, TripInfoRequest request, Deadline deadline) {
+        // parts come from the flight branch and from this thread, one event at a time on the wire
+        ReentrantLock sending = new ReentrantLock();
+        TripInfoService.Progress progress = (event, data) -> {
+            sending.lock();
+            try {
+                if (!client.terminated()) {
+                    client.sendEvent(event, data);
+                }
+            } finally {
+                sending.unlock();
+            }
+        };
+        // a dead connection only shows up on a write, so write a comment now and then
+        ScheduledFuture<?> heartbeat = sseHeartbeat.scheduleAtFixedRate(() -> {
+            sending.lock();
+            try {
+                if (!client.terminated()) {
+                    client.sendComment("ping");
+                }
+            } finally {
+                sending.unlock();
+            }
+        }, SSE_HEARTBEAT.toMillis(), SSE_HEARTBEAT.toMillis(), TimeUnit.MILLISECONDS);
+        // interrupting this thread cancels both trip-info branches
+        Thread worker = Thread.currentThread();
+        AtomicBoolean finished = new AtomicBoolean();
+        client.onClose(() -> {
+            if (!finished.get()) {
+                worker.interrupt();
+            }
+        });
+
+        try {
+            Map<String, Object> result = deadline.call(() -> tripInfo(request, progress));
+            Map<String, Object> done = new HashMap<>();
+            done.put("coordinates", result.get("coordinates"));
+            done.put("warnings", result.getOrDefault("warnings", List.of()));
+            progress.part("done", done);
+        } catch (CancellationException e) {
+            logger.info("Trip-info stream closed by the client");
+        } catch (Exception e) {
+            TripInfoError error = tripInfoError(e);
+            Map<String, Object> failure = new HashMap<>(error.body());
+            failure.put("status", error.status());
+            progress.part("failure", failure);
+        } finally {
+            finished.set(true);
+            heartbeat.cancel(false);
+            // an interrupt that raced with the end must not leak to the next task on this thread
+            Thread.interrupted();
+            client.close();
+        }
+    }
+
+    private record TripInfoRequest(double lat, double lng, String origin, boolean hasOriginCoords,
+                                   double originLat, double originLng, String checkInDate,
+                                   String checkOutDate, int adults, int rooms) {
+    }
+
+    // Validated /trip-info parameters, or null after answering 400/404
+    private static TripInfoRequest parseTripInfoRequest(Context ctx) {
         String latStr = ctx.queryParam("lat");
         String lngStr = ctx.queryParam("lng");
         String origin = ctx.queryParam("origin");
@@ -143,81 +335,105 @@ public class TripController {
             ctx.status(400).json(Map.of(
                     "error", "Missing or invalid parameters"
             ));
-            return;
+            return null;
         }
 
-        try {
-            // Parse numbers
-            double lat = Double.parseDouble(latStr.trim().replace(",", "."));
-            double lng = Double.parseDouble(lngStr.trim().replace(",", "."));
-            int adults = Integer.parseInt(adultsStr.trim());
-            int rooms = Integer.parseInt(roomQuantityStr.trim());
-
-            double oLat = 0;
-            double oLng = 0;
-            if (hasOriginCoords) {
-                oLat = Double.parseDouble(originLatStr.trim().replace(",", "."));
-                oLng = Double.parseDouble(originLngStr.trim().replace(",", "."));
-            }
+        // Parse numbers
+        double lat = Double.parseDouble(latStr.trim().replace(",", "."));
+        double lng = Double.parseDouble(lngStr.trim().replace(",", "."));
+        int adults = Integer.parseInt(adultsStr.trim());
+        int rooms = Integer.parseInt(roomQuantityStr.trim());
+
+        double oLat = 0;
+        double oLng = 0;
+        if (hasOriginCoords) {
+            oLat = Double.parseDouble(originLatStr.trim().replace(",", "."));
+            oLng = Double.parseDouble(originLngStr.trim().replace(",", "."));
+        }
 
-            String resolvedOrigin = null;
-            if (hasOrigin) {
-                resolvedOrigin = origin.trim();
-            } else if (hasOriginCoords) {
-                resolvedOrigin = amadeusService.findNearestAirportCode(oLat, oLng);
-            }
+        String resolvedOrigin = null;
+        if (hasOrigin) {
+            resolvedOrigin = origin.trim();
+        } else if (hasOriginCoords) {
+            resolvedOrigin = amadeusService.findNearestAirportCode(oLat, oLng);
+        }
 
-            if (resolvedOrigin == null || resolvedOrigin.isEmpty()) {
-                ctx.status(404).json(Map.of(
-                        "error", "No airport close to you"
-                ));
-                return;
-            }
-            logger.info("Origin used for airport search: {}", resolvedOrigin);
+        if (resolvedOrigin == null || resolvedOrigin.isEmpty()) {
+            ctx.status(404).json(Map.of(
+                    "error", "No airport close to you"
+            ));
+            return null;
+        }
+        logger.info("Origin used for airport search: {}", resolvedOrigin);
+        return new TripInfoRequest(lat, lng, resolvedOrigin, hasOriginCoords, oLat, oLng,
+                checkInDate, checkOutDate, adults, rooms);
+    }
 
-            Map<String, Object> result;
-            if (hasOriginCoords) {
-                result = tripInfoService.getTripInfo(
-                        lat, lng, resolvedOrigin, oLat, oLng, checkInDate, checkOutDate, adults, rooms
-                );
-            } else {
-                result = tripInfoService.getTripInfo(
-                        lat, lng, resolvedOrigin, checkInDate, checkOutDate,adults, rooms
-                );
-            }
+    private static Map<String, Object> tripInfo(TripInfoRequest request, TripInfoService.Progress progress)
+            throws ResponseException, TimeoutException {
+        if (request.hasOriginCoords()) {
+            return tripInfoService.getTripInfo(
+                    request.lat(), request.lng(), request.origin(), request.originLat(), request.originLng(),
+                    request.checkInDate(), request.checkOutDate(), request.adults(), request.rooms(), progress
+            );
+        }
+        return tripInfoService.getTripInfo(
+                request.lat(), request.lng(), request.origin(), request.checkInDate(), request.checkOutDate(),
+                request.adults(), request.rooms(), progress
+        );
+    }
+
+    private record TripInfoError(int status, Map<String, Object> body, Map<String, String> headers) {
+        TripInfoError(int status, Map<String, Object> body) {
+            this(status, body, Map.of());
+        }
 
-            ctx.contentType("application/json");
-            ctx.json(result);
+        void send(Context ctx) {
+            headers.forEach(ctx::header);
+            ctx.status(status).json(body);
+        }
+    }
 
-        } catch (IllegalArgumentException e) {
+    // Map trip-info exceptions to HTTP codes, shared by /trip-info and /trip-info/stream
+    private static TripInfoError tripInfoError(Exception e) {
+        if (e instanceof IllegalArgumentException) {
             logger.warn("Trip-info validation error: {}", e.getMessage());
-            ctx.status(400).json(Map.of(
+            return new TripInfoError(400, Map.of(
                     "error", e.getMessage()
             ));
-        } catch (IllegalStateException e) {
+        }
+        if (e instanceof IllegalStateException) {
             logger.warn("Trip-info state error: {}", e.getMessage());
-            ctx.status(404).json(Map.of(
+            return new TripInfoError(404, Map.of(
                     "error", e.getMessage()
             ));
-        } catch (ResponseException e) {
-            ctx.status(502).json(Map.of(
+        }
+        if (e instanceof ResponseException) {
+            return new TripInfoError(502, Map.of(
                     "error", "Upstream service error",
                     "details", e.getMessage()
             ));
-        } catch (TimeoutException e) {
+        }
+        if (e instanceof CircuitOpenException open) {
+            logger.warn("Trip-info refused by an open circuit: {}", e.getMessage());
+            return new TripInfoError(503, Map.of(
+                    "error", "Upstream service unavailable",
+                    "message", e.getMessage(),
+                    "retryAfterSeconds", open.retryAfterSeconds()
+            ), Map.of(Header.RETRY_AFTER, String.valueOf(open.retryAfterSeconds())));
+        }
+        if (e instanceof TimeoutException) {
             logger.error("Trip-info timed out", e);
-            ctx.status(504).json(Map.of(
+            return new TripInfoError(504, Map.of(
                     "error", "Request timed out",
                     "message", "The upstream service did not respond in time."
             ));
-        } catch (Exception e) {
-            logger.error("Unexpected error while handling trip-info", e);
-            ctx.status(500).json(Map.of(
-                    "error", "Internal Server Error",
-                    "message", e.getMessage()
-            ));
         }
-
+        logger.error("Unexpected error while handling trip-info", e);
+        return new TripInfoError(500, Map.of(
+                "error", "Internal Server Error",
+                "message", e.getMessage()
+        ));
     }
 
     private static void handleLocationSearch(Context ctx) {
@@ -235,6 +451,8 @@ public class TripController {
                     "error", "Upstream service error",
                     "details", e.getMessage()
             ));
+        } catch (CircuitOpenException e) {
+            Reply.unavailable(e).send(ctx);
         } catch (TimeoutException e) {
             ctx.status(504).json(Map.of(
                     "error", "Request timed out",
@@ -249,116 +467,41 @@ public class TripController {
     }
 
     private static void handleFlightSearch(Context ctx) {
-        if (!ensureAmadeusConfigured(ctx)) return;
-        String origin = ctx.queryParam("origin");
-        String destination = ctx.queryParam("destination");
-        String departureDate = ctx.queryParam("departureDate");
-        String returnDate = ctx.queryParam("returnDate");
-        String adultsStr = ctx.queryParam("adults");
+        flightSearch(ctx::queryParam).send(ctx);
+    }
+
+    // /search/flights, also run as part of /batch
+    private static Reply flightSearch(Function<String, String> param) {
+        if (!amadeusConfigured()) return AMADEUS_NOT_CONFIGURED;
+        String origin = param.apply("origin");
+        String destination = param.apply("destination");
+        String departureDate = param.apply("departureDate");
+        String returnDate = param.apply("returnDate");
+        String adultsStr = param.apply("adults");
 
         if (origin == null || origin.isBlank()
                 || destination == null || destination.isBlank()
                 || departureDate == null || !ValidationUtils.isFutureDate(departureDate)
                 || !ValidationUtils.isPositiveInteger(adultsStr)) {
-            ctx.status(400).json(Map.of("error", "Invalid or missing parameters."));
-            return;
+            return new Reply(400, Map.of("error", "Invalid or missing parameters."));
         }
 
         try {
             int adults = Integer.parseInt(adultsStr);
-            String flightsJson = amadeusService.getFlightOffers(origin, destination, departureDate, returnDate, adults);
-            JsonArray originalArray = JsonParser.parseString(flightsJson).getAsJsonArray();
-
-            JsonArray simplifiedArray = new JsonArray();
-
-            for (var offerElement : originalArray) {
-                if (!offerElement.isJsonObject()) continue;
-                JsonObject offer = offerElement.getAsJsonObject();
-
-                JsonArray itineraries = offer.has("itineraries") ? offer.getAsJsonArray("itineraries") : null;
-                if (itineraries == null || itineraries.size() == 0) continue;
-                JsonObject itinerary = Optional.ofNullable(itineraries.get(0))
-                        .filter(JsonElement::isJsonObject)
-                        .map(JsonElement::getAsJsonObject)
-                        .orElse(null);
-                if (itinerary == null || !itinerary.has("segments")) continue;
-
-                JsonArray segments = itinerary.getAsJsonArray("segments");
-                if (segments.size() == 0) continue;
-                JsonObject firstSegment = Optional.ofNullable(segments.get(0))
-                        .filter(JsonElement::isJsonObject)
-                        .map(JsonElement::getAsJsonObject)
-                        .orElse(null);
-                JsonObject lastSegment = Optional.ofNullable(segments.get(segments.size() - 1))
-                        .filter(JsonElement::isJsonObject)
-                        .map(JsonElement::getAsJsonObject)
-                        .orElse(null);
-                if (firstSegment == null || lastSegment == null
-                        || !firstSegment.has("departure") || !lastSegment.has("arrival")) {
-                    continue;
-                }
-                JsonObject departure = firstSegment.getAsJsonObject("departure");
-                JsonObject arrival = lastSegment.getAsJsonObject("arrival");
-                if (!departure.has("iataCode") || !arrival.has("iataCode") || !departure.has("at") || !arrival.has("at")) {
-                    continue;
-                }
-                JsonObject simplified = new JsonObject();
-                simplified.addProperty("origin", departure.get("iataCode").getAsString());
-                simplified.addProperty("destination", arrival.get("iataCode").getAsString());
-                simplified.addProperty("departure", departure.get("at").getAsString());
-                simplified.addProperty("arrival", arrival.get("at").getAsString());
-                simplified.addProperty("duration", itinerary.has("duration") ? itinerary.get("duration").getAsString() : "");
-                if (offer.has("price") && offer.get("price").isJsonObject()) {
-                    JsonObject price = offer.getAsJsonObject("price");
-                    if (price.has("total")) simplified.addProperty("price", price.get("total").getAsString());
-                    if (price.has("currency")) simplified.addProperty("currency", price.get("currency").getAsString());
-                }
-                if (firstSegment.has("carrierCode")) {
-                    simplified.addProperty("airline", firstSegment.get("carrierCode").getAsString());
-                }
-
-                JsonArray legs = new JsonArray();
-                JsonArray stopovers = new JsonArray();
-                for (int i = 0; i < segments.size(); i++) {
-                    JsonObject seg = Optional.ofNullable(segments.get(i))
-                            .filter(JsonElement::isJsonObject)
-                            .map(JsonElement::getAsJsonObject)
-                            .orElse(null);
-                    if (seg == null || !seg.has("departure") || !seg.has("arrival")) continue;
-                    JsonObject segDep = seg.getAsJsonObject("departure");
-                    JsonObject segArr = seg.getAsJsonObject("arrival");
-                    if (!segDep.has("iataCode") || !segArr.has("iataCode")) continue;
-
-                    JsonObject leg = new JsonObject();
-                    leg.addProperty("origin", segDep.get("iataCode").getAsString());
-                    leg.addProperty("destination", segArr.get("iataCode").getAsString());
-                    if (segDep.has("at")) leg.addProperty("departure", segDep.get("at").getAsString());
-                    if (segArr.has("at")) leg.addProperty("arrival", segArr.get("at").getAsString());
-                    if (seg.has("carrierCode")) leg.addProperty("airline", seg.get("carrierCode").getAsString());
-                    legs.add(leg);
-
-                    if (i < segments.size() - 1) {
-                        stopovers.add(segArr.get("iataCode").getAsString());
-                    }
-                }
-                simplified.add("segments", legs);
-                if (stopovers.size() > 0) {
-                    simplified.add("stopovers", stopovers);
-                }
-                simplifiedArray.add(simplified);
-            }
-
-            ctx.contentType("application/json");
-            ctx.result(new Gson().toJson(simplifiedArray));
-
+            List<FlightSummary> flights = amadeusService.getFlightOffers(origin, destination, departureDate, returnDate, adults);
+            return Reply.ok(airlineDirectory.enrich(flights).stream()
+                    .map(FlightSummary::withDurationOrEmpty)
+                    .toList());
+        } catch (CircuitOpenException e) {
+            return Reply.unavailable(e);
         } catch (TimeoutException e) {
             logger.error("Flight search timed out", e);
-            ctx.status(504).json(Map.of(
+            return new Reply(504, Map.of(
                     "error", "Request timed out"
             ));
         } catch (Exception e) {
             logger.error("Unexpected error in flight search", e);
-            ctx.status(500).json(Map.of(
+            return new Reply(500, Map.of(
                     "error", "Internal Server Error",
                     "message", e.getMessage()
             ));
@@ -367,37 +510,37 @@ public class TripController {
 
 
     private static void handleNearbySearch(Context ctx) {
-        if (!ensureAmadeusConfigured(ctx)) return;
-        String latStr = ctx.queryParam("lat");
-        String lngStr = ctx.queryParam("lng");
-        String checkInDate = ctx.queryParam("checkInDate");
-        String checkOutDate = ctx.queryParam("checkOutDate");
-        String adultsStr = ctx.queryParam("adults") != null ? ctx.queryParam("adults").trim() : null;
-        String roomQuantityStr = ctx.queryParam("roomQuantity") != null ? ctx.queryParam("roomQuantity").trim() : null;
-        String radiusStr = ctx.queryParam("radiusKm");
+        nearbySearch(ctx::queryParam).send(ctx);
+    }
+
+    // /search/nearby, also run as part of /batch
+    private static Reply nearbySearch(Function<String, String> param) {
+        if (!amadeusConfigured()) return AMADEUS_NOT_CONFIGURED;
+        String latStr = param.apply("lat");
+        String lngStr = param.apply("lng");
+        String checkInDate = param.apply("checkInDate");
+        String checkOutDate = param.apply("checkOutDate");
+        String adultsStr = param.apply("adults") != null ? param.apply("adults").trim() : null;
+        String roomQuantityStr = param.apply("roomQuantity") != null ? param.apply("roomQuantity").trim() : null;
+        String radiusStr = param.apply("radiusKm");
 
         logger.debug("Nearby search lat={}, lng={}, checkInDate={}, adults={}, roomQuantity={}", latStr, lngStr, checkInDate, adultsStr, roomQuantityStr);
 
         // Check if params are correct
         if (!ValidationUtils.isValidCoordinates(latStr, lngStr)) {
-            ctx.status(400).result("Invalid parameters: coordinates are not valid.");
-            return;
+            return new Reply(400, "Invalid parameters: coordinates are not valid.");
         }
         if (!ValidationUtils.isFutureDate(checkInDate)) {
-            ctx.status(400).result("Invalid parameters: check-in date is not valid.");
-            return;
+            return new Reply(400, "Invalid parameters: check-in date is not valid.");
         }
         if (checkOutDate != null && !checkOutDate.isBlank() && !ValidationUtils.isValidDateRange(checkInDate, checkOutDate)) {
-            ctx.status(400).result("Invalid parameters: check-out date is not valid.");
-            return;
+            return new Reply(400, "Invalid parameters: check-out date is not valid.");
         }
         if (!ValidationUtils.isPositiveInteger(adultsStr)) {
-            ctx.status(400).result("Invalid parameters: number of adults is not valid.");
-            return;
+            return new Reply(400, "Invalid parameters: number of adults is not valid.");
         }
         if (!ValidationUtils.isPositiveInteger(roomQuantityStr)) {
-            ctx.status(400).result("Invalid parameters: room quantity is not valid.");
-            return;
+            return new Reply(400, "Invalid parameters: room quantity is not valid.");
         }
 
         try {
@@ -415,10 +558,11 @@ public class TripController {
 
             if (hotelSearchService != null) {
                 try {
+                    // the handler has a virtual thread of its own, so it simply waits for the search
                     var fastResults = hotelSearchService.searchHotels(
                             new HotelSearchService.HotelQuery(lat, lng, checkInDate, checkOutDate, adults, rooms, radiusKm));
                     if (!fastResults.isEmpty()) {
-                        List<Map<String, Object>> hotels = normalizeHotelSummaries(fastResults);
+                        List<Map<String, Object>> hotels = TripInfoService.normalizeHotelSummaries(fastResults);
                         Map<String, Object> response = new HashMap<>();
                         response.put("coordinates", Map.of("lat", lat, "lng", lng));
                         response.put("offers", hotels);
@@ -426,8 +570,7 @@ public class TripController {
                                 "count", hotels.size(),
                                 "radiusKm", radiusKm
                         ));
-                        ctx.json(response);
-                        return;
+                        return Reply.ok(response);
                     }
                     logger.info("Fast hotel search returned no results, falling back to legacy flow");
                 } catch (Exception ex) {
@@ -435,112 +578,75 @@ public class TripController {
                 }
             }
 
-            runLegacyNearbySearch(ctx, lat, lng, checkInDate, checkOutDate, adults, rooms);
+            return runLegacyNearbySearch(lat, lng, checkInDate, checkOutDate, adults, rooms);
         } catch (Exception e) {
             logger.error("Unexpected error while searching nearby hotels", e);
-            ctx.status(500).result("Internal Server Error: " + e.getMessage());
+            return new Reply(500, "Internal Server Error: " + e.getMessage());
         }
     }
 
-    // Old way to search hotels if the fast one fails
-    private static List<Map<String, Object>> normalizeHotelSummaries(List<HotelSummary> summaries) {
-        List<Map<String, Object>> results = new ArrayList<>();
-        for (HotelSummary summary : summaries) {
-            Map<String, Object> hotel = new HashMap<>();
-            Map<String, Object> hotelInfo = new HashMap<>();
-            hotelInfo.put("name", summary.name());
-            hotelInfo.put("latitude", summary.lat());
-            hotelInfo.put("longitude", summary.lng());
-            hotelInfo.put("address", summary.address());
-            if (summary.rating() != null && !summary.rating().isBlank()) {
-                hotelInfo.put("rating", summary.rating());
-            }
-
-            Map<String, Object> price = new HashMap<>();
-            price.put("total", summary.priceTotal());
-            price.put("currency", summary.currency());
-
-            Map<String, Object> offerContainer = new HashMap<>();
-            offerContainer.put("hotel", hotelInfo);
-            offerContainer.put("offers", List.of(Map.of("price", price)));
-            offerContainer.put("mapsLink", summary.mapsLink());
-
-            hotel.put("hotelId", summary.id());
-            hotel.put("offers", List.of(offerContainer));
-            hotel.put("map", Map.of("lat", summary.lat(), "lng", summary.lng(), "link", summary.mapsLink()));
-            results.add(hotel);
-        }
-        return results;
-    }
-
-    private static void runLegacyNearbySearch(Context ctx, double lat, double lng, String checkInDate, String checkOutDate, int adults, int rooms) {
+    private static Reply runLegacyNearbySearch(double lat, double lng, String checkInDate, String checkOutDate, int adults, int rooms) {
         try {
             String hotelResponseJson = amadeusService.getHotelsByGeocode(lat, lng, 10);
             JsonArray hotelArray = JsonParser.parseString(hotelResponseJson).getAsJsonArray();
 
-            List<Map<String, Object>> validOffers = new ArrayList<>();
-
+            List<String> hotelIds = new ArrayList<>();
             for (var element : hotelArray) {
-                if (!element.isJsonObject()) continue;
-                JsonObject hotelObj = element.getAsJsonObject();
-                if (hotelObj.has("hotelId")) {
-                    String hotelId = hotelObj.get("hotelId").getAsString();
-                    try {
-                        String offerJson = amadeusService.getHotelOffers(hotelId, adults, checkInDate, rooms, checkOutDate);
+                if (element.isJsonObject() && element.getAsJsonObject().has("hotelId")) {
+                    hotelIds.add(element.getAsJsonObject().get("hotelId").getAsString());
+                }
+            }
+
+            // one batched offers lookup instead of a call per hotel
+            List<Map<String, Object>> validOffers = new ArrayList<>();
+            amadeusService.getHotelOffersBatched(hotelIds, adults, checkInDate, rooms, checkOutDate, 5)
+                    .forEach((hotelId, offers) -> {
+                        if (validOffers.size() >= 5) return;
                         Map<String, Object> hotelData = new HashMap<>();
                         hotelData.put("hotelId", hotelId);
-                        hotelData.put("offers", JsonParser.parseString(offerJson));
+                        hotelData.put("offers", offers);
                         validOffers.add(hotelData);
-                    } catch (ResponseException e) {
-                        if ("429".equals(e.getCode())) {
-                            logger.warn("Rate limit exceeded while fetching offers for {}: {}", hotelId, e.getMessage());
-                            ctx.status(429).result("Rate limit exceeded, retry later");
-                            return;
-                        }
-                        if ("400".equals(e.getCode())) {
-                            logger.info("Skipping hotel {} due to upstream bad request: {}", hotelId, e.getMessage());
-                            continue;
-                        }
-                        logger.warn("Failed to fetch offers for {}: {}", hotelId, e.getMessage());
-                    }
-                }
-                if (validOffers.size() >= 5) break;
-            }
+                    });
 
             if (validOffers.isEmpty()) {
-                ctx.status(404).result("No available hotel offers");
-                return;
+                return new Reply(404, "No available hotel offers");
             }
 
             Map<String, Object> response = new HashMap<>();
             response.put("coordinates", Map.of("lat", lat, "lng", lng));
             response.put("offers", validOffers);
 
-            ctx.contentType("application/json");
-            ctx.result(new Gson().toJson(response));
+            // the offers are Gson trees, so Gson writes them
+            return Reply.rawJson(200, new Gson().toJson(response));
         } catch (ResponseException e) {
             if ("429".equals(e.getCode())) {
                 logger.warn("Rate limit exceeded while searching hotels: {}", e.getMessage());
-                ctx.status(429).result("Rate limit exceeded, retry later");
-                return;
+                return new Reply(429, "Rate limit exceeded, retry later");
             }
             logger.error("Upstream service error during nearby search: {}", e.getMessage());
-            ctx.status(502).result("Upstream service error: " + e.getMessage());
+            return new Reply(502, "Upstream service error: " + e.getMessage());
+        } catch (CircuitOpenException e) {
+            return Reply.unavailable(e);
         } catch (TimeoutException e) {
             logger.error("Nearby hotels request timed out", e);
-            ctx.status(504).result("Request timed out");
+            return new Reply(504, "Request timed out");
         } catch (Exception e) {
             logger.error("Unexpected error while searching nearby hotels", e);
-            ctx.status(500).result("Internal Server Error: " + e.getMessage());
+            return new Reply(500, "Internal Server Error: " + e.getMessage());
         }
     }
 
     private static void handleNearbyAirports(Context ctx) {
-        if (!ensureAmadeusConfigured(ctx)) return;
-        String latStr = ctx.queryParam("lat");
-        String lngStr = ctx.queryParam("lng");
-        String limitStr = ctx.queryParam("limit");
-        String radiusStr = ctx.queryParam("radius");
+        nearbyAirports(ctx::queryParam).send(ctx);
+    }
+
+    // /nearby-airports, also run as part of /batch
+    private static Reply nearbyAirports(Function<String, String> param) {
+        if (!amadeusConfigured()) return AMADEUS_NOT_CONFIGURED;
+        String latStr = param.apply("lat");
+        String lngStr = param.apply("lng");
+        String limitStr = param.apply("limit");
+        String radiusStr = param.apply("radius");
         int limit = 5; // default
         if (limitStr != null && !limitStr.isEmpty()) {
             try {
@@ -558,8 +664,7 @@ public class TripController {
             }
         }
         if (!ValidationUtils.isValidCoordinates(latStr, lngStr)) {
-            ctx.status(400).json(Map.of("error", "Invalid coordinates"));
-            return;
+            return new Reply(400, Map.of("error", "Invalid coordinates"));
         }
         try {
             double lat = Double.parseDouble(latStr);
@@ -573,28 +678,27 @@ public class TripController {
                     List<Map<String, Object>> fallback =
                             amadeusService.getNearbyAirportDetails(lat, lng, 1000, 1);
                     if (!fallback.isEmpty()) {
-                        ctx.json(fallback);
-                    } else {
-                        ctx.json(List.of(Map.of("iata", nearestCode)));
+                        return Reply.ok(fallback);
                     }
-                    return;
+                    return Reply.ok(List.of(Map.of("iata", nearestCode)));
                 }
 
-                ctx.status(404).json(
+                return new Reply(404,
                         Map.of("error", "Dataset di test limitato a US/ES/UK/DE/IN")
                 );
-                return;
             }
 
-            ctx.json(airports);
+            return Reply.ok(airports);
         } catch (ResponseException e) {
-            ctx.status(502).json(Map.of("error", "Upstream service error"));
+            return new Reply(502, Map.of("error", "Upstream service error"));
+        } catch (CircuitOpenException e) {
+            return Reply.unavailable(e);
         } catch (TimeoutException e) {
-            ctx.status(504).json(Map.of("error", "Request timed out"));
+            return new Reply(504, Map.of("error", "Request timed out"));
         } catch (Exception e) {
-            ctx.status(500).json(
+            return new Reply(500,
                     Map.of("error", "Internal Server Error", "message", e.getMessage())
             );
         }
     }
-}
\ No newline at end of file
+}
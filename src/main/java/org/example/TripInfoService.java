@@ -4,12 +4,22 @@ import com.amadeus.exceptions.ResponseException;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -18,15 +28,37 @@ import java.util.concurrent.TimeoutException;
  * - search hotels
  * - search flights (with fallback)
  * - assemble final response map
+ * Hotels run next to the airport + flight branch under one shared deadline,
+ * so a failed or slow branch still leaves the other one in the response.
+ * Interrupting the caller cancels both branches.
  */
 public class TripInfoService {
     private static final Logger logger = LoggerFactory.getLogger(TripInfoService.class);
     private final AmadeusService amadeusService;
     private final HotelSearchService hotelSearchService;
+    private final AirlineDirectory airlineDirectory;
+    // branches and fallback searches block on upstream I/O, a virtual thread each keeps that cheap
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("trip-info-", 0).factory());
+    // budget when called outside a request, the /trip-info handler passes its own deadline
+    private static final Duration TRIP_INFO_BUDGET = Duration.ofSeconds(25);
+    private static final int FALLBACK_CONCURRENCY = 4;
 
-    public TripInfoService(AmadeusService amadeusService, HotelSearchService hotelSearchService) {
+    /**
+     * Receives the parts of the answer as soon as each one is known (/trip-info/stream).
+     * Parts can arrive from different threads.
+     */
+    public interface Progress {
+        Progress NONE = (event, data) -> { };
+
+        void part(String event, Map<String, Object> data);
+    }
+
+    public TripInfoService(AmadeusService amadeusService, HotelSearchService hotelSearchService,
+                           AirlineDirectory airlineDirectory) {
         this.amadeusService = amadeusService;
         this.hotelSearchService = hotelSearchService;
+        this.airlineDirectory = airlineDirectory;
     }
 
     /**
@@ -39,7 +71,8 @@ public class TripInfoService {
             String checkInDate,
             String checkOutDate,
             int adults,
-            int rooms
+            int rooms,
+            Progress progress
     ) throws ResponseException, TimeoutException {
         // quick geocode so we can jump from city text to airport
         double[] originCoords = amadeusService.geocodeCityToCoords(originCity);
@@ -49,7 +82,7 @@ public class TripInfoService {
         String originAirport = amadeusService.getNearestAirport(originCoords[0], originCoords[1]);
         if (originAirport == null) throw new IllegalStateException("No origin airport found");
 
-        return getTripInfoInternal(lat, lng, originAirport, originCoords, checkInDate, checkOutDate, adults, rooms);
+        return getTripInfoInternal(lat, lng, originAirport, originCoords, checkInDate, checkOutDate, adults, rooms, progress);
     }
 
     /**
@@ -64,7 +97,8 @@ public class TripInfoService {
             String checkInDate,
             String checkOutDate,
             int adults,
-            int rooms
+            int rooms,
+            Progress progress
     ) throws ResponseException, TimeoutException {
         double[] originCoords = new double[]{originLat, originLng};
         // If we dont have origin airport, find it
@@ -72,7 +106,7 @@ public class TripInfoService {
             originAirport = amadeusService.getNearestAirport(originLat, originLng);
             if (originAirport == null) throw new IllegalStateException("No origin airport found");
         }
-        return getTripInfoInternal(lat, lng, originAirport, originCoords, checkInDate, checkOutDate, adults, rooms);
+        return getTripInfoInternal(lat, lng, originAirport, originCoords, checkInDate, checkOutDate, adults, rooms, progress);
     }
 
     private Map<String, Object> getTripInfoInternal(
@@ -83,13 +117,77 @@ public class TripInfoService {
             String checkInDate,
             String checkOutDate,
             int adults,
-            int rooms
+            int rooms,
+            Progress progress
     ) throws ResponseException, TimeoutException {
         // keep the happy path short and log the key context
         logger.info("Starting trip-info for destination ({}, {}) from {} at {}", lat, lng, originAirport, checkInDate);
-        logger.debug("Looking up nearest airport for destination");
+        logger.debug("Origin coords: {}", Arrays.toString(originCoords));
+        // every branch and every upstream call in it shares the request deadline
+        Deadline deadline = Deadline.currentOr(TRIP_INFO_BUDGET);
+
+        // Hotels do not depend on airports, so they run next to the airport + flight branch
+        CompletableFuture<List<Map<String, Object>>> hotelsFuture =
+                fetchHotelSummaries(deadline, lat, lng, checkInDate, checkOutDate, adults, rooms);
+        // one task for both steps, so cancelling the future stops whichever one is running
+        CompletableFuture<FlightSearchResult> flightsFuture = runAsync(deadline, () -> {
+            String destinationAirport = findDestinationAirport(lat, lng);
+            progress.part("airports", Map.of("originAirport", originAirport, "destinationAirport", destinationAirport));
+            return searchFlights(originAirport, destinationAirport, originCoords, lat, lng, checkInDate, adults, deadline);
+        });
+
+        List<String> warnings = new ArrayList<>();
+        List<Map<String, Object>> hotelOffers;
+        try {
+            hotelOffers = await(hotelsFuture, deadline);
+        } catch (CancellationException e) {
+            flightsFuture.cancel(true);
+            throw e;
+        } catch (Exception e) {
+            logger.warn("Hotel branch of trip-info failed: {}", e.getMessage());
+            warnings.add("Hotels unavailable: " + describe(e));
+            hotelOffers = List.of();
+        }
+        progress.part("hotels", Map.of("hotels", hotelOffers));
+
+        FlightSearchResult flights;
+        try {
+            flights = await(flightsFuture, deadline);
+        } catch (CancellationException e) {
+            throw e;
+        } catch (ResponseException | TimeoutException | RuntimeException e) {
+            // without hotels there is nothing useful to return, keep the old error mapping
+            if (hotelOffers.isEmpty()) {
+                throw e;
+            }
+            logger.warn("Flight branch of trip-info failed, returning hotels only: {}", e.getMessage());
+            warnings.add("Flights unavailable: " + describe(e));
+            flights = new FlightSearchResult(originAirport, null, List.of());
+        }
+
+        // 5. Keep the top 3 distinct flights, airline names come from memory
+        List<FlightSummary> topFlights = airlineDirectory.enrich(FlightSummary.distinct(flights.offers(), 3));
+        Map<String, Object> flightPart = new HashMap<>();
+        flightPart.put("originAirport", flights.originAirport());
+        flightPart.put("destinationAirport", flights.destinationAirport());
+        flightPart.put("flights", topFlights);
+        progress.part("flights", flightPart);
+        // 6. Assemble response
+        Map<String, Object> response = new HashMap<>();
+        response.put("coordinates", Map.of("lat", lat, "lng", lng));
+        response.put("originAirport", flights.originAirport());
+        response.put("destinationAirport", flights.destinationAirport());
+        response.put("hotels", hotelOffers);
+        response.put("flights", topFlights);
+        if (!warnings.isEmpty()) {
+            response.put("warnings", warnings);
+        }
+        return response;
+    }
 
-        // Find destination airport
+    // Find destination airport
+    private String findDestinationAirport(double lat, double lng) throws ResponseException, TimeoutException {
+        logger.debug("Looking up nearest airport for destination");
         String destinationAirport = amadeusService.getNearestAirport(lat, lng);
         if (destinationAirport == null) {
             logger.warn("No main destination airport found. Trying nearby airports...");
@@ -102,178 +200,235 @@ public class TripInfoService {
                 throw new IllegalStateException("No destination airport found within 200km.");
             }
         }
+        return destinationAirport;
+    }
 
-        logger.debug("Origin coords: {}", Arrays.toString(originCoords));
-
-
-        // 3. Search hotel offers (limit to top 3)
-        List<Map<String, Object>> hotelOffers = fetchHotelSummaries(lat, lng, checkInDate, checkOutDate, adults, rooms);
-
+    // Search flight offers (with fallback)
+    private FlightSearchResult searchFlights(
+            String originAirport,
+            String destinationAirport,
+            double[] originCoords,
+            double lat,
+            double lng,
+            String checkInDate,
+            int adults,
+            Deadline deadline
+    ) throws ResponseException, TimeoutException {
         // 4. Search flight offers (with fallback)
-        JsonArray flightArray = JsonParser
-                .parseString(amadeusService.getFlightOffers(originAirport, destinationAirport, checkInDate, null, adults))
-                .getAsJsonArray();
+        List<FlightSummary> flights = amadeusService.getFlightOffers(originAirport, destinationAirport, checkInDate, null, adults);
 
         // If no flights found, try fallback airports
-        if (flightArray.size() == 0) {
+        if (flights.isEmpty()) {
             // simple fallback so user still gets something
             logger.warn("No direct flights found, trying fallback airports...");
             List<String> altOrigins = amadeusService.getNearbyAirports(originCoords[0], originCoords[1], 100, 3);
             List<String> altDests = amadeusService.getNearbyAirports(lat, lng, 100, 3);
-            outer:
+            List<String[]> pairs = new ArrayList<>();
             for (String altOrig : altOrigins) {
                 for (String altDest : altDests) {
                     if (altOrig.equals(originAirport) && altDest.equals(destinationAirport)) continue;
-                    try {
-                        JsonArray altArray = JsonParser
-                                .parseString(amadeusService.getFlightOffers(altOrig, altDest, checkInDate, null, adults))
-                                .getAsJsonArray();
-                        if (altArray.size() > 0) {
-                            flightArray = altArray;
-                            originAirport = altOrig;
-                            destinationAirport = altDest;
-                            logger.info("Fallback flight found: {} -> {}", altOrig, altDest);
-                            break outer;
-                        }
-                    } catch (ResponseException ignored) {}
+                    pairs.add(new String[]{altOrig, altDest});
                 }
             }
+            FlightSearchResult fallback = raceFallbackPairs(pairs, checkInDate, adults, deadline);
+            if (fallback != null) {
+                return fallback;
+            }
         }
 
+        return new FlightSearchResult(originAirport, destinationAirport, flights);
+    }
 
-        // 5. Simplify flight offers (limit to top 3)
-        JsonArray simplifiedFlights = new JsonArray();
-        Set<String> seenFlights = new HashSet<>();
-        for (JsonElement offerElement : flightArray) {
-            if (!offerElement.isJsonObject()) continue;
-            JsonObject offer = offerElement.getAsJsonObject();
-            JsonArray itineraries = offer.has("itineraries") ? offer.getAsJsonArray("itineraries") : null;
-            if (itineraries == null || itineraries.size() == 0) continue;
-            JsonObject itinerary = itineraries.get(0).getAsJsonObject();
-            JsonArray segments = itinerary.getAsJsonArray("segments");
-            if (segments == null || segments.size() == 0) continue;
-            JsonObject firstSegment = segments.get(0).getAsJsonObject();
-            JsonObject lastSegment = segments.get(segments.size() - 1).getAsJsonObject();
-            JsonObject dep = firstSegment.getAsJsonObject("departure");
-            JsonObject arr = lastSegment.getAsJsonObject("arrival");
-            if (dep == null || arr == null || !dep.has("iataCode") || !arr.has("iataCode") || !dep.has("at") || !arr.has("at")) {
-                continue;
-            }
+    // Search the alternate pairs in parallel (at most FALLBACK_CONCURRENCY at once).
+    // The winner is the first pair in list order that has offers, so the result does
+    // not depend on which call happens to answer first. Calls still running are cancelled.
+    private FlightSearchResult raceFallbackPairs(List<String[]> pairs, String checkInDate, int adults, Deadline deadline) {
+        Semaphore permits = new Semaphore(FALLBACK_CONCURRENCY, true);
+        List<Future<List<FlightSummary>>> tasks = new ArrayList<>();
+        for (String[] pair : pairs) {
+            tasks.add(executor.submit(deadline.wrap(() -> {
+                permits.acquire();
+                try {
+                    // alternates queue behind interactive searches when Amadeus is busy
+                    return AmadeusScheduler.withPriority(AmadeusScheduler.Priority.FALLBACK, () ->
+                            amadeusService.getFlightOffers(pair[0], pair[1], checkInDate, null, adults));
+                } finally {
+                    permits.release();
+                }
+            })));
+        }
 
-            String originCode = dep.get("iataCode").getAsString();
-            String destCode = arr.get("iataCode").getAsString();
-            String depTime = dep.get("at").getAsString();
-            String key = originCode + destCode + depTime;
-            if (seenFlights.contains(key)) {
-                continue;
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                List<FlightSummary> altFlights;
+                try {
+                    altFlights = tasks.get(i).get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException e) {
+                    logger.debug("Fallback {} -> {} failed: {}", pairs.get(i)[0], pairs.get(i)[1], e.getCause().getMessage());
+                    continue;
+                }
+                if (!altFlights.isEmpty()) {
+                    logger.info("Fallback flight found: {} -> {}", pairs.get(i)[0], pairs.get(i)[1]);
+                    return new FlightSearchResult(pairs.get(i)[0], pairs.get(i)[1], altFlights);
+                }
             }
-            seenFlights.add(key);
-            JsonObject simple = new JsonObject();
-            simple.addProperty("origin", originCode);
-            simple.addProperty("destination", destCode);
-            simple.addProperty("departure", depTime);
-            simple.addProperty("arrival", arr.get("at").getAsString());
-            if (itinerary.has("duration")) {
-                simple.addProperty("duration", itinerary.get("duration").getAsString());
+        } catch (TimeoutException e) {
+            logger.warn("Fallback flight search ran out of time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<List<FlightSummary>> task : tasks) {
+                task.cancel(true);
             }
-            if (offer.has("price") && offer.get("price").isJsonObject()) {
-                JsonObject price = offer.getAsJsonObject("price");
-                if (price.has("total")) simple.addProperty("price", price.get("total").getAsString());
-                if (price.has("currency")) simple.addProperty("currency", price.get("currency").getAsString());
+        }
+        return null;
+    }
+
+    // Run a blocking call on the trip-info executor, within the request deadline.
+    // Cancelling the returned future interrupts the thread working on it.
+    private <T> CompletableFuture<T> runAsync(Deadline deadline, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> running = executor.submit(() -> {
+            try {
+                future.complete(deadline.call(task));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
             }
-            if (firstSegment.has("carrierCode")) {
-                simple.addProperty("airline", firstSegment.get("carrierCode").getAsString());
+        });
+        future.whenComplete((value, error) -> {
+            if (future.isCancelled()) {
+                running.cancel(true);
             }
+        });
+        return future;
+    }
 
-            JsonArray legs = new JsonArray();
-            JsonArray stopovers = new JsonArray();
-            for (int i = 0; i < segments.size(); i++) {
-                JsonObject seg = segments.get(i).getAsJsonObject();
-                JsonObject segDep = seg.getAsJsonObject("departure");
-                JsonObject segArr = seg.getAsJsonObject("arrival");
-                if (segDep == null || segArr == null || !segDep.has("iataCode") || !segArr.has("iataCode")) continue;
-
-                JsonObject leg = new JsonObject();
-                leg.addProperty("origin", segDep.get("iataCode").getAsString());
-                leg.addProperty("destination", segArr.get("iataCode").getAsString());
-                if (segDep.has("at")) leg.addProperty("departure", segDep.get("at").getAsString());
-                if (segArr.has("at")) leg.addProperty("arrival", segArr.get("at").getAsString());
-                if (seg.has("carrierCode")) leg.addProperty("airline", seg.get("carrierCode").getAsString());
-                legs.add(leg);
-
-                if (i < segments.size() - 1 && segArr.has("iataCode")) {
-                    stopovers.add(segArr.get("iataCode").getAsString());
-                }
+    // Wait for a branch, but never past the request deadline
+    private <T> T await(CompletableFuture<T> future, Deadline deadline) throws ResponseException, TimeoutException {
+        try {
+            return future.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new TimeoutException("Trip-info deadline exceeded");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause()
+                    : e.getCause();
+            if (cause instanceof ResponseException re) {
+                throw re;
             }
-            simple.add("segments", legs);
-            if (stopovers.size() > 0) {
-                simple.add("stopovers", stopovers);
+            if (cause instanceof TimeoutException te) {
+                throw te;
             }
-
-            simplifiedFlights.add(simple);
-            if (simplifiedFlights.size() >= 3) break;
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            // the caller gave up, e.g. the /trip-info/stream client went away
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new CancellationException("Trip-info cancelled");
         }
-        Object simplifiedFlightObject = new Gson().fromJson(simplifiedFlights, Object.class);
-        // 6. Assemble response
-        Map<String, Object> response = new HashMap<>();
-        response.put("coordinates", Map.of("lat", lat, "lng", lng));
-        response.put("originAirport", originAirport);
-        response.put("destinationAirport", destinationAirport);
-        response.put("hotels", hotelOffers);
-        response.put("flights", simplifiedFlightObject);
-        return response;
     }
 
-    private List<Map<String, Object>> fetchHotelSummaries(double lat, double lng, String checkInDate, String checkOutDate, int adults, int rooms) {
-        List<Map<String, Object>> hotelOffers = new ArrayList<>();
-        if (hotelSearchService != null) {
-            try {
-                List<HotelSearchService.HotelSummary> summaries = hotelSearchService.searchHotels(
-                        new HotelSearchService.HotelQuery(lat, lng, checkInDate, checkOutDate, adults, rooms, 10));
-                for (HotelSearchService.HotelSummary summary : summaries) {
-                    hotelOffers.add(toHotelPayload(summary));
-                    if (hotelOffers.size() >= 3) break;
+    private static String describe(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    // The fast search is composed without holding a thread; only the legacy flow, when it is
+    // needed, runs on the executor. Cancelling the returned future cancels whichever one is running.
+    private CompletableFuture<List<Map<String, Object>>> fetchHotelSummaries(Deadline deadline, double lat, double lng,
+                                                                            String checkInDate, String checkOutDate,
+                                                                            int adults, int rooms) {
+        if (hotelSearchService == null) {
+            return runAsync(deadline, () -> fetchLegacyHotelSummaries(lat, lng, checkInDate, checkOutDate, adults, rooms));
+        }
+        CompletableFuture<List<HotelSearchService.HotelSummary>> search;
+        try {
+            // the search takes its deadline from the calling thread
+            search = deadline.call(() -> hotelSearchService.searchHotelsAsync(
+                    new HotelSearchService.HotelQuery(lat, lng, checkInDate, checkOutDate, adults, rooms, 10)));
+        } catch (Exception e) {
+            search = CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<List<Map<String, Object>>> hotels = new CompletableFuture<>();
+        search.whenComplete((summaries, error) -> {
+            if (hotels.isDone()) {
+                // the branch was cancelled, nobody waits for the legacy flow
+                return;
+            }
+            if (error == null && !summaries.isEmpty()) {
+                hotels.complete(normalizeHotelSummaries(summaries.subList(0, Math.min(3, summaries.size()))));
+                return;
+            }
+            if (error != null) {
+                // if the fast HTTP client fails we still try legacy flow
+                logger.warn("Fast hotel summary lookup failed, falling back: {}", error.getMessage());
+            }
+            CompletableFuture<List<Map<String, Object>>> legacy = runAsync(deadline, () ->
+                    fetchLegacyHotelSummaries(lat, lng, checkInDate, checkOutDate, adults, rooms));
+            legacy.whenComplete((offers, legacyError) -> {
+                if (legacyError != null) {
+                    hotels.completeExceptionally(legacyError);
+                } else {
+                    hotels.complete(offers);
                 }
-                if (!hotelOffers.isEmpty()) {
-                    return hotelOffers;
+            });
+            hotels.whenComplete((offers, hotelsError) -> {
+                if (hotels.isCancelled()) {
+                    legacy.cancel(true);
                 }
-            } catch (Exception e) {
-                // if the fast HTTP client fails we still try legacy flow
-                logger.warn("Fast hotel summary lookup failed, falling back: {}", e.getMessage());
+            });
+        });
+        CompletableFuture<List<HotelSearchService.HotelSummary>> fastSearch = search;
+        hotels.whenComplete((offers, error) -> {
+            if (hotels.isCancelled()) {
+                fastSearch.cancel(true);
             }
-        }
+        });
+        return hotels;
+    }
 
+    private List<Map<String, Object>> fetchLegacyHotelSummaries(double lat, double lng, String checkInDate,
+                                                                String checkOutDate, int adults, int rooms) {
+        List<Map<String, Object>> hotelOffers = new ArrayList<>();
         try {
             JsonArray hotelArray = JsonParser
                     .parseString(amadeusService.getHotelsByGeocode(lat, lng, 10))
                     .getAsJsonArray();
+            List<String> hotelIds = new ArrayList<>();
             for (JsonElement element : hotelArray) {
-                if (!element.isJsonObject()) continue;
-                JsonObject hotelObj = element.getAsJsonObject();
-                if (!hotelObj.has("hotelId")) continue;
-                String hotelId = hotelObj.get("hotelId").getAsString();
-                try {
-                    String offersJson = amadeusService.getHotelOffers(hotelId, adults, checkInDate, rooms, checkOutDate);
-                    JsonElement parsedOffers = JsonParser.parseString(offersJson);
-                    if (!parsedOffers.isJsonArray() || parsedOffers.getAsJsonArray().size() == 0) {
-                        continue;
-                    }
-                    Map<String, Object> hotelData = new HashMap<>();
-                    hotelData.put("hotelId", hotelId);
-                    hotelData.put("offers", new Gson().fromJson(parsedOffers, Object.class));
-                    hotelOffers.add(hotelData);
-                    if (hotelOffers.size() >= 3) break;
-                } catch (ResponseException e) {
-                    logger.debug("Skipping unavailable hotel {}: {}", hotelId, e.getMessage());
+                if (element.isJsonObject() && element.getAsJsonObject().has("hotelId")) {
+                    hotelIds.add(element.getAsJsonObject().get("hotelId").getAsString());
                 }
             }
+            Map<String, JsonArray> offersByHotel = amadeusService.getHotelOffersBatched(
+                    hotelIds, adults, checkInDate, rooms, checkOutDate, 3);
+            for (Map.Entry<String, JsonArray> entry : offersByHotel.entrySet()) {
+                Map<String, Object> hotelData = new HashMap<>();
+                hotelData.put("hotelId", entry.getKey());
+                hotelData.put("offers", new Gson().fromJson(entry.getValue(), Object.class));
+                hotelOffers.add(hotelData);
+                if (hotelOffers.size() >= 3) break;
+            }
         } catch (TimeoutException | ResponseException e) {
             logger.warn("Legacy hotel lookup failed: {}", e.getMessage());
         }
         return hotelOffers;
     }
 
-    private Map<String, Object> toHotelPayload(HotelSearchService.HotelSummary summary) {
+    // Same shape as the legacy hotel offers, so the frontend handles both alike
+    static List<Map<String, Object>> normalizeHotelSummaries(List<HotelSearchService.HotelSummary> summaries) {
+        List<Map<String, Object>> results = new ArrayList<>(summaries.size());
+        for (HotelSearchService.HotelSummary summary : summaries) {
+            results.add(toHotelPayload(summary));
+        }
+        return results;
+    }
+
+    static Map<String, Object> toHotelPayload(HotelSearchService.HotelSummary summary) {
         Map<String, Object> hotelData = new HashMap<>();
         Map<String, Object> hotelInfo = new HashMap<>();
         hotelInfo.put("name", summary.name());
@@ -298,4 +453,7 @@ public class TripInfoService {
         hotelData.put("map", Map.of("lat", summary.lat(), "lng", summary.lng(), "link", summary.mapsLink()));
         return hotelData;
     }
-}
\ No newline at end of file
+
+    private record FlightSearchResult(String originAirport, String destinationAirport, List<FlightSummary> offers) {
+    }
+}
@@ -11,6 +11,9 @@ public class ValidationUtils {
 
     // Check if the coordinates are valid numbers
     public static boolean isValidCoordinates(String lat, String lng) {
+        if (lat == null || lng == null) {
+            return false;
+        }
         try {
             double latitude = Double.parseDouble(lat);
             double longitude = Double.parseDouble(lng);
@@ -135,7 +135,7 @@ function displayFlight(flight, container) {
     div.className = 'flight-card';
     
     div.innerHTML = `
-        <h3>${flight.airline} Flight</h3>
+        <h3>${flight.airlineName || flight.airline} Flight</h3>
         <div class="flex">
             <div>
                 <p><strong>${flight.origin} → ${flight.destination}</strong></p>
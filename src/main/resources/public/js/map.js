@@ -370,17 +370,15 @@ function requestTripInfo(destLat, destLng) {
             const radiusSelect = document.getElementById('radius-input');
             const radius = radiusSelect && radiusSelect.value ? Number(radiusSelect.value) : 200;
 
-            // first step: find nearby airports for origin and destination
-            const flightsPromise = Promise.all([
-                fetch(`/nearby-airports?lat=${originLat}&lng=${originLng}&limit=5&radius=${radius}`).then(res => {
-                    if (!res.ok) throw new Error('Airport lookup failed');
-                    return res.json();
-                }),
-                fetch(`/nearby-airports?lat=${destLat}&lng=${destLng}&limit=5&radius=${radius}`).then(res => {
-                    if (!res.ok) throw new Error('Airport lookup failed');
-                    return res.json();
-                })
+            // first step: find nearby airports for origin and destination, one round trip for both
+            const flightsPromise = fetchBatch([
+                { id: 'origin', path: '/nearby-airports', params: { lat: originLat, lng: originLng, limit: 5, radius } },
+                { id: 'destination', path: '/nearby-airports', params: { lat: destLat, lng: destLng, limit: 5, radius } }
             ])
+                .then(responses => responses.map(res => {
+                    if (res.status !== 200) throw new Error('Airport lookup failed');
+                    return res.body;
+                }))
                 .then(([origAirports, destAirports]) => {
                     // backend may return {error: "..."} so handle it
                     if (origAirports.error) throw new Error(origAirports.error);
@@ -501,30 +499,29 @@ function requestTripInfo(destLat, destLng) {
         }
 
         // ---------------- trip mode (combined) ----------------
-        // this endpoint probably returns flights + hotels + nearby airports etc
-        const url = `/trip-info?lat=${destLat}&lng=${destLng}&checkInDate=${checkInDate}&adults=${adults}&roomQuantity=${roomQuantity}&originLat=${originLat}&originLng=${originLng}` +
+        // streamed: hotels show up as soon as they are found, flights follow when ready
+        const url = `/trip-info/stream?lat=${destLat}&lng=${destLng}&checkInDate=${checkInDate}&adults=${adults}&roomQuantity=${roomQuantity}&originLat=${originLat}&originLng=${originLng}` +
             (checkOutDate ? `&checkOutDate=${checkOutDate}` : "");
 
-        const tripPromise = fetch(url).then(async res => {
-            // backend returns json error message in body, so read it
-            if (!res.ok) {
-                const error = await res.json();
-                const msg = error.error || error.message || "Unknown error";
-                throw new Error(msg);
-            }
-            return res.json();
-        })
-            .then(data => {
-                appState.cache.set(cacheKey, data);
+        // every event adds its fields, so at the end this looks like the /trip-info response
+        const data = {};
+        const tripPromise = fetchTripInfoStream(url, (event, part) => {
+            Object.assign(data, part);
 
-                // if hotels exist in response, draw them
-                if (data.hotels) {
-                    drawHotelMarkers(data.hotels);
-                }
+            // if hotels exist in response, draw them
+            if (event === "hotels" && part.hotels) {
+                drawHotelMarkers(part.hotels);
+            }
 
-                // update sidebar
+            // update sidebar with what we have so far
+            if (event !== "airports") {
                 renderSidebar(data, currentMode);
                 showSidebar();
+            }
+        })
+            .then(() => {
+                appState.cache.set(cacheKey, data);
+                return data;
             })
             .catch(err => {
                 console.error("Trip info fetch failed:", err.message);
@@ -540,6 +537,68 @@ function requestTripInfo(destLat, destLng) {
     }
 }
 
+// POST /batch: several GET endpoints in one round trip.
+// Resolves with one {id, status, body} per request, in the same order.
+async function fetchBatch(requests) {
+    const res = await fetch('/batch', {
+        method: 'POST',
+        headers: { 'Content-Type': 'application/json' },
+        body: JSON.stringify({ requests })
+    });
+    if (!res.ok) throw new Error('Batch request failed');
+    const data = await res.json();
+    return data.responses;
+}
+
+// Read /trip-info/stream (Server-Sent Events) and hand every event to onPart.
+// Resolves after the "done" event; errors before the stream opens come back as normal
+// JSON with an HTTP status, later ones as a "failure" event. fetch instead of EventSource
+// so we can read those error bodies and nothing reconnects on its own.
+async function fetchTripInfoStream(url, onPart) {
+    const res = await fetch(url, { headers: { Accept: "text/event-stream" } });
+    // backend returns json error message in body, so read it
+    if (!res.ok) {
+        const error = await res.json();
+        throw new Error(error.error || error.message || "Unknown error");
+    }
+
+    const reader = res.body.pipeThrough(new TextDecoderStream()).getReader();
+    let buffer = "";
+    while (true) {
+        const { value, done } = await reader.read();
+        if (done) {
+            throw new Error("Trip info stream ended early");
+        }
+        buffer += value;
+
+        // events end with a blank line, the last one may still be incomplete
+        let end;
+        while ((end = buffer.indexOf("\n\n")) >= 0) {
+            const block = buffer.slice(0, end);
+            buffer = buffer.slice(end + 2);
+
+            let event = "message";
+            const lines = [];
+            block.split("\n").forEach(line => {
+                if (line.startsWith("event:")) event = line.slice(6).trim();
+                if (line.startsWith("data:")) lines.push(line.slice(5));
+            });
+            // ": ping" comments only keep the connection checked
+            if (!lines.length) continue;
+
+            const part = JSON.parse(lines.join("\n"));
+            if (event === "failure") {
+                throw new Error(part.error || part.message || "Unknown error");
+            }
+            onPart(event, part);
+            if (event === "done") {
+                reader.cancel();
+                return part;
+            }
+        }
+    }
+}
+
 function configureRadiusOptions(mode) {
     // change radius options depending on the mode
     const radiusSelect = document.getElementById("radius-input");
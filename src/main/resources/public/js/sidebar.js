@@ -50,7 +50,7 @@ function renderSidebar(data, mode) {
       From: ${f.origin || "-"} → To: ${f.destination || "-"}<br/>
       Departure: ${f.departure ? formatDate(f.departure) : "N/A"}<br/>
       Price: ${f.price || "N/A"} ${f.currency || ""}<br/>
-      Airline: ${f.airline || "N/A"}
+      Airline: ${f.airlineName || f.airline || "N/A"}
     `;
             container.appendChild(flight);
         });